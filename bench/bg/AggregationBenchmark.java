@@ -0,0 +1,30 @@
+package bg;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.infra.Blackhole;
+
+/** AGGREGATIONBENCHMARK measures the totals of Months and of the whole
+ *  Budget, overall and for a single category.
+ *  @author Brodie Vivio
+ */
+public class AggregationBenchmark {
+
+    @Benchmark
+    public void monthTotals(BudgetState state, Blackhole blackhole) {
+	for (Month month : state.budget.getMonths()) {
+	    blackhole.consume(month.getTotal());
+	    blackhole.consume(month.getTotal("Cat_1"));
+	}
+    }
+
+    @Benchmark
+    public long budgetTotal(BudgetState state) {
+	return state.budget.getTotal();
+    }
+
+    @Benchmark
+    public long budgetCatTotal(BudgetState state) {
+	return state.budget.getTotal("Cat_1");
+    }
+
+}
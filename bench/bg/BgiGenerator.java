@@ -0,0 +1,74 @@
+package bg;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.Random;
+
+/** A BGIGENERATOR writes synthetic .bgi files for benchmarks. Every month
+ *  it writes has an 'Income' category followed by expense categories
+ *  named Cat_1, Cat_2, ..., and its items are spread at random over its
+ *  categories, with positive amounts for Income and negative amounts for
+ *  everything else. The same arguments always give the same files.
+ *
+ *  Run as 'java -cp .:bench bg.BgiGenerator DIR MONTHS CATS ITEMS' to
+ *  write MONTHS months of CATS categories and ITEMS items each into DIR.
+ *  @author Brodie Vivio
+ */
+class BgiGenerator {
+
+    /** The number of distinct item names used. */
+    private static final int NAMES = 1000;
+
+    public static void main(String[] args) throws IOException {
+	if (args.length != 4) {
+	    System.err.println(
+		"usage: java bg.BgiGenerator DIR MONTHS CATS ITEMS");
+	    System.exit(1);
+	}
+	File dir = new File(args[0]);
+	dir.mkdirs();
+	writeBudget(dir, Integer.parseInt(args[1]), Integer.parseInt(args[2]),
+		    Integer.parseInt(args[3]));
+    }
+
+    /** Returns the names of the categories of a month with CATS
+     *  categories. */
+    static String[] cats(int cats) {
+	String[] names = new String[cats];
+	names[0] = "Income";
+	for (int c = 1; c < cats; c++) {
+	    names[c] = "Cat_" + c;
+	}
+	return names;
+    }
+
+    /** Writes MONTHS months with CATS categories and ITEMS items each to
+     *  the files month_1.bgi, month_2.bgi, ... in DIR. */
+    static void writeBudget(File dir, int months, int cats, int items)
+	throws IOException {
+	for (int m = 1; m <= months; m++) {
+	    writeMonth(new File(dir, "month_" + m + ".bgi"), m, "Month_" + m,
+		       cats(cats), items);
+	}
+    }
+
+    /** Writes the month numbered NUM and named NAME with the categories
+     *  CATS and ITEMS random items to FILE. */
+    static void writeMonth(File file, int num, String name, String[] cats,
+			   int items) throws IOException {
+	Random random = new Random(num);
+	try (PrintWriter out = new PrintWriter(file)) {
+	    out.printf("%d %s 31%n", num, name);
+	    out.println(String.join(", ", cats));
+	    for (int i = 0; i < items; i++) {
+		int cat = random.nextInt(cats.length);
+		int cents = random.nextInt(100000);
+		out.printf("%s %d Item_%d %s%d.%02d%n", cats[cat],
+			   1 + random.nextInt(31), random.nextInt(NAMES),
+			   cat == 0 ? "" : "-", cents / 100, cents % 100);
+	    }
+	}
+    }
+
+}
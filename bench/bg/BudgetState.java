@@ -0,0 +1,71 @@
+package bg;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.util.Scanner;
+
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/** A BUDGETSTATE is the shared state of the JMH benchmarks: a directory
+ *  of synthetic .bgi files written by BgiGenerator and a
+ *  CommandInterpreter that has loaded all of them. Its size is set by the
+ *  months, cats and items parameters, which can be overridden on the JMH
+ *  command line with -p.
+ *  @author Brodie Vivio
+ */
+@State(Scope.Benchmark)
+public class BudgetState {
+
+    /** The number of months in the budget. */
+    @Param("12")
+    public int months;
+    /** The number of categories in each month, including Income. */
+    @Param("8")
+    public int cats;
+    /** The number of items in each month. */
+    @Param("10000")
+    public int items;
+
+    /** The directory holding my .bgi files. */
+    File dir;
+    /** The first of my .bgi files. */
+    String firstFile;
+    /** The CommandInterpreter that has loaded all my .bgi files. */
+    CommandInterpreter interpreter;
+    /** The budget of interpreter. */
+    Budget budget;
+    /** The buffer that reports are rendered into. */
+    ReportBuilder report;
+
+    @Setup
+    public void setup() throws IOException {
+	dir = Files.createTempDirectory("bgbench").toFile();
+	BgiGenerator.writeBudget(dir, months, cats, items);
+	firstFile = new File(dir, "month_1.bgi").getPath();
+	report = new ReportBuilder();
+	interpreter = new CommandInterpreter(
+	    new Scanner("load all from " + dir.getPath() + "\n"),
+	    new PrintStream(OutputStream.nullOutputStream()));
+	interpreter.statement();
+	budget = interpreter.getBudget();
+	if (budget.getMonths().size() != months) {
+	    throw new IllegalStateException("could not load " + dir);
+	}
+    }
+
+    @TearDown
+    public void tearDown() {
+	for (File file : dir.listFiles()) {
+	    file.delete();
+	}
+	dir.delete();
+    }
+
+}
@@ -0,0 +1,197 @@
+package bg;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.EOFException;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/** A LOADGEN measures the throughput and latency of a budgetGuide server
+ *  running on the local host. It opens a number of connections, each of
+ *  which sends statements one after another for a number of seconds,
+ *  taking them in turn from a file or, by default, a budget report and a
+ *  query for the ten largest items. Statements answered in a warm-up
+ *  period first are not counted. It then prints the number of statements
+ *  answered per second, how many of the answers were errors, and the
+ *  median, 99th percentile and largest latencies.
+ *
+ *  Run as 'java -cp .:bench bg.LoadGen PORT [CLIENTS [SECONDS
+ *  [STATEMENTS]]]' against a server started with 'java bg.Main -s PORT
+ *  SCRIPT'. There are 8 clients for 10 seconds by default.
+ *  @author Brodie Vivio
+ */
+class LoadGen {
+
+    /** The statements sent if no file of them is given. */
+    private static final List<String> STATEMENTS =
+	List.of("report budget", "select top 10 items");
+    /** The length of the warm-up period, in seconds. */
+    private static final int WARMUP = 2;
+
+    public static void main(String[] args) throws Exception {
+	if (args.length < 1 || args.length > 4) {
+	    System.err.println(
+		"usage: java bg.LoadGen PORT [CLIENTS [SECONDS [STATEMENTS]]]");
+	    System.exit(1);
+	}
+	int port = Integer.parseInt(args[0]);
+	int clients = args.length > 1 ? Integer.parseInt(args[1]) : 8;
+	int seconds = args.length > 2 ? Integer.parseInt(args[2]) : 10;
+	List<String> statements =
+	    args.length > 3 ? readStatements(args[3]) : STATEMENTS;
+	long start = System.nanoTime() + WARMUP * 1000000000L;
+	long end = start + seconds * 1000000000L;
+	Client[] running = new Client[clients];
+	for (int c = 0; c < clients; c++) {
+	    running[c] = new Client(port, statements, c, start, end);
+	    running[c].start();
+	}
+	Percentile latencies = new Percentile(1024);
+	long errors = 0;
+	for (Client client : running) {
+	    client.join();
+	    if (client._failure != null) {
+		System.err.printf("client failed: %s%n", client._failure);
+		System.exit(1);
+	    }
+	    for (int i = 0; i < client._count; i++) {
+		latencies.add(client._latencies[i]);
+	    }
+	    errors += client._errors;
+	}
+	int answered = latencies.size();
+	System.out.printf("%d clients, %d s: %d statements, %.1f/s,"
+			  + " %d errors%n", clients, seconds, answered,
+			  answered / (double) seconds, errors);
+	if (answered > 0) {
+	    System.out.printf("latency: p50 %.3f ms, p99 %.3f ms,"
+			      + " max %.3f ms%n", latencies.get(50) / 1e6,
+			      latencies.get(99) / 1e6,
+			      latencies.get(100) / 1e6);
+	}
+    }
+
+    /** Returns the statements in the file FILENAME, skipping blank lines
+     *  and lines starting with '#'. */
+    private static List<String> readStatements(String fileName)
+	throws IOException {
+	ArrayList<String> statements = new ArrayList<String>();
+	try (BufferedReader in = new BufferedReader(new FileReader(fileName))) {
+	    for (String line = in.readLine(); line != null;
+		 line = in.readLine()) {
+		if (!line.isBlank() && !line.startsWith("#")) {
+		    statements.add(line);
+		}
+	    }
+	}
+	return statements;
+    }
+
+    /** Returns the answer to one statement read from IN, without the
+     *  line giving its length. */
+    private static byte[] readAnswer(InputStream in) throws IOException {
+	int length = 0;
+	for (int b = in.read(); b != '\n'; b = in.read()) {
+	    if (b < '0' || b > '9') {
+		throw new EOFException("connection closed");
+	    }
+	    length = 10 * length + b - '0';
+	}
+	byte[] answer = new byte[length];
+	int read = 0;
+	while (read < length) {
+	    int n = in.read(answer, read, length - read);
+	    if (n < 0) {
+		throw new EOFException("connection closed");
+	    }
+	    read += n;
+	}
+	return answer;
+    }
+
+
+    /** A CLIENT is one connection sending statements to the server and
+     *  timing the answers. */
+    private static class Client extends Thread {
+
+	/** The port of the server. */
+	private final int _port;
+	/** The statements sent, in turn. */
+	private final List<String> _statements;
+	/** The index in _statements of the first statement sent. */
+	private final int _first;
+	/** The time, by System.nanoTime, from which answers are counted. */
+	private final long _start;
+	/** The time after which no more statements are sent. */
+	private final long _end;
+	/** The latencies in nanoseconds of the answers counted. */
+	private long[] _latencies = new long[1024];
+	/** The number of answers counted. */
+	private int _count;
+	/** The number of answers counted that were errors. */
+	private long _errors;
+	/** Why the connection failed, or null. */
+	private Exception _failure;
+
+	/** Creates a new Client of the server on PORT sending STATEMENTS,
+	 *  starting with the one at index FIRST, that counts the answers
+	 *  it gets from time START until time END. */
+	Client(int port, List<String> statements, int first, long start,
+	       long end) {
+	    _port = port;
+	    _statements = statements;
+	    _first = first;
+	    _start = start;
+	    _end = end;
+	}
+
+	@Override
+	public void run() {
+	    try (Socket socket = new Socket(InetAddress.getLoopbackAddress(),
+					    _port)) {
+		socket.setTcpNoDelay(true);
+		OutputStream out = socket.getOutputStream();
+		InputStream in = new BufferedInputStream(socket.getInputStream());
+		for (int s = _first; System.nanoTime() < _end; s++) {
+		    byte[] statement = (_statements.get(s % _statements.size())
+					+ "\n").getBytes(StandardCharsets.UTF_8);
+		    long sent = System.nanoTime();
+		    out.write(statement);
+		    out.flush();
+		    byte[] answer = readAnswer(in);
+		    long received = System.nanoTime();
+		    if (sent < _start) {
+			continue;
+		    }
+		    if (_count == _latencies.length) {
+			_latencies = Arrays.copyOf(_latencies, 2 * _count);
+		    }
+		    _latencies[_count++] = received - sent;
+		    if (startsWith(answer, "ERROR")) {
+			_errors++;
+		    }
+		}
+	    } catch (IOException e) {
+		_failure = e;
+	    }
+	}
+
+	/** Returns true iff the text ANSWER starts with PREFIX. */
+	private static boolean startsWith(byte[] answer, String prefix) {
+	    byte[] bytes = prefix.getBytes(StandardCharsets.US_ASCII);
+	    return answer.length >= bytes.length
+		&& Arrays.equals(answer, 0, bytes.length, bytes, 0,
+				 bytes.length);
+	}
+
+    }
+
+}
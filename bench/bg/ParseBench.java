@@ -0,0 +1,84 @@
+package bg;
+
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.Scanner;
+
+/** PARSEBENCH measures the throughput of reading .bgi files with a
+ *  BGIReader against the old Scanner based parser. It writes a synthetic
+ *  .bgi file with the number of items given as the first argument
+ *  (default 1000000), then times several rounds of parsing it both ways.
+ *  @author Brodie Vivio
+ */
+class ParseBench {
+
+    /** The categories of the synthetic month. */
+    private static final String[] CATS = {
+	"Income", "Food", "Bills", "Luxuries", "Necessary_Expenses"
+    };
+    /** The number of timed rounds for each parser. */
+    private static final int ROUNDS = 5;
+
+    public static void main(String[] args) throws IOException {
+	int items = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+	File file = File.createTempFile("bench", ".bgi");
+	file.deleteOnExit();
+	BgiGenerator.writeMonth(file, 1, "Bench", CATS, items);
+	double megabytes = file.length() / 1e6;
+	System.out.printf("%d items, %.1f MB%n", items, megabytes);
+	for (int round = 0; round < ROUNDS; round++) {
+	    long start = System.nanoTime();
+	    Month scanned = scannerParse(file.getPath());
+	    double scannerSecs = (System.nanoTime() - start) / 1e9;
+	    start = System.nanoTime();
+	    Month read = readerParse(file.getPath());
+	    double readerSecs = (System.nanoTime() - start) / 1e9;
+	    System.out.printf("round %d: Scanner %.1f MB/s, BGIReader %.1f MB/s"
+			      + " (totals %s, %s)%n", round,
+			      megabytes / scannerSecs, megabytes / readerSecs,
+			      Money.format(scanned.getTotal()),
+			      Money.format(read.getTotal()));
+	}
+    }
+
+    /** Parses FILENAME the way CommandInterpreter did with a Scanner. */
+    static Month scannerParse(String fileName) throws IOException {
+	try (Scanner in = new Scanner(new FileReader(fileName))) {
+	    in.nextInt();
+	    Month month = new Month(in.next(), in.nextInt());
+	    in.nextLine();
+	    for (String cat : in.nextLine().split(", ")) {
+		month.addCat(cat);
+	    }
+	    while (in.hasNextLine()) {
+		if (!in.hasNext()) {
+		    break;
+		}
+		String cat = in.next();
+		int date = in.nextInt();
+		String name = in.next();
+		double amount = in.nextDouble();
+		month.addItem(cat, name, date, Math.round(100 * amount));
+	    }
+	    return month;
+	}
+    }
+
+    /** Parses FILENAME with a BGIReader. */
+    static Month readerParse(String fileName) throws IOException {
+	try (BGIReader in = new BGIReader(fileName)) {
+	    in.readHeader();
+	    Month month = new Month(in.getName(), in.getDays());
+	    for (String cat : in.readCats()) {
+		month.addCat(cat);
+	    }
+	    while (in.nextItem()) {
+		month.addItem(in.getCat(), in.getItemName(), in.getDate(),
+			      in.getAmount());
+	    }
+	    return month;
+	}
+    }
+
+}
@@ -0,0 +1,19 @@
+package bg;
+
+import java.io.IOException;
+
+import org.openjdk.jmh.annotations.Benchmark;
+
+/** PARSEBENCHMARK measures reading a single synthetic .bgi file into a
+ *  Month with CommandInterpreter.processFile.
+ *  @author Brodie Vivio
+ */
+public class ParseBenchmark {
+
+    @Benchmark
+    public long processFile(BudgetState state) throws IOException {
+	return state.interpreter.processFile(state.firstFile, false, false)
+	    .getTotal();
+    }
+
+}
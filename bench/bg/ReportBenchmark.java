@@ -0,0 +1,25 @@
+package bg;
+
+import org.openjdk.jmh.annotations.Benchmark;
+
+/** REPORTBENCHMARK measures rendering the budget and category reports,
+ *  bypassing the cache of rendered results.
+ *  @author Brodie Vivio
+ */
+public class ReportBenchmark {
+
+    @Benchmark
+    public int reportBudget(BudgetState state) {
+	state.report.clear();
+	state.interpreter.reportBudget(state.budget, state.report);
+	return state.report.toString().length();
+    }
+
+    @Benchmark
+    public int reportCat(BudgetState state) {
+	state.report.clear();
+	state.interpreter.reportCat(state.budget, "Cat_1", state.report);
+	return state.report.toString().length();
+    }
+
+}
@@ -0,0 +1,42 @@
+package bg;
+
+import java.util.ArrayList;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/** SELECTBENCHMARK measures Condition.filter with one or more conditions,
+ *  set by the conditions parameter. Every condition holds in every
+ *  month, so all of them are always tested.
+ *  @author Brodie Vivio
+ */
+@State(Scope.Benchmark)
+public class SelectBenchmark {
+
+    /** The number of conditions, which must be less than the number of
+     *  categories. */
+    @Param({"1", "2", "4"})
+    public int conditions;
+
+    /** The conditions tested. */
+    private ArrayList<Condition> _conds;
+
+    @Setup
+    public void setup(BudgetState state) {
+	_conds = new ArrayList<Condition>();
+	_conds.add(new Condition("Total", AmountComparator.LT,
+				 Long.MAX_VALUE));
+	for (int c = 1; c < conditions; c++) {
+	    _conds.add(new Condition("Cat_" + c, AmountComparator.LE, 0));
+	}
+    }
+
+    @Benchmark
+    public int filter(BudgetState state) {
+	return Condition.filter(_conds, state.budget).size();
+    }
+
+}
@@ -0,0 +1,198 @@
+package bg;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/** An AGGREGATION computes the sum, average, smallest, largest and number
+ *  of the amounts of the Items of a Budget in groups, by category, by
+ *  month or by both, in one pass over the Budget. Each group keeps its
+ *  running values in an Accumulator found by hashing the group's key
+ *  once per category of each Month, so the Items themselves are only
+ *  added up as primitives. If neither the smallest nor the largest amount
+ *  is asked for, the Items are not read at all: the number and total of
+ *  each category of a Month are known without them.
+ *
+ *  Groups are output as a table, in the order in which their keys first
+ *  appear in the Budget, with the groups sharing their first key kept
+ *  together.
+ *  @author Brodie Vivio
+ */
+class Aggregation {
+
+    /** The names of the aggregate functions. */
+    static final List<String> FUNCTIONS =
+	List.of("sum", "avg", "min", "max", "count");
+    /** The names of the keys that Items can be grouped by. */
+    static final List<String> KEYS = List.of("category", "month");
+
+    /** The aggregate functions I output, in order. */
+    private final List<String> _functions;
+    /** The keys I group Items by, in order. */
+    private final List<String> _keys;
+    /** True iff the Items must be read to compute my functions. */
+    private final boolean _needsItems;
+    /** My groups, by their first key and then by their second key, which
+     *  is "" if I group by one key only. */
+    private final LinkedHashMap<String, LinkedHashMap<String, Accumulator>>
+	_groups;
+
+    /** Creates a new empty Aggregation computing the functions FUNCTIONS
+     *  of groups with the keys KEYS, which must be names in FUNCTIONS and
+     *  KEYS. */
+    Aggregation(List<String> functions, List<String> keys) {
+	_functions = functions;
+	_keys = keys;
+	_needsItems = functions.contains("min") || functions.contains("max");
+	_groups = new LinkedHashMap<String, LinkedHashMap<String, Accumulator>>();
+    }
+
+    /** Adds all the Items of BUDGET to my groups. */
+    void add(Budget budget) {
+	for (Month month : budget.getMonths()) {
+	    for (String cat : month.getCats()) {
+		add(month, cat);
+	    }
+	}
+    }
+
+    /** Adds the Items of category CAT of MONTH to my groups. */
+    private void add(Month month, String cat) {
+	String first = key(_keys.get(0), month, cat);
+	String second = _keys.size() == 1 ? "" : key(_keys.get(1), month, cat);
+	LinkedHashMap<String, Accumulator> inner = _groups.get(first);
+	if (inner == null) {
+	    inner = new LinkedHashMap<String, Accumulator>();
+	    _groups.put(first, inner);
+	}
+	Accumulator group = inner.get(second);
+	if (group == null) {
+	    group = new Accumulator();
+	    inner.put(second, group);
+	}
+	if (_needsItems) {
+	    Category items = month.getCategory(cat);
+	    for (int i = 0; i < items.size(); i++) {
+		group.add(items.getAmount(i));
+	    }
+	} else {
+	    group.add(month.getCount(cat), month.getTotal(cat));
+	}
+    }
+
+    /** Returns the value of the key NAME for category CAT of MONTH. */
+    private static String key(String name, Month month, String cat) {
+	return name.equals("month") ? month.getName() : cat;
+    }
+
+    /** Outputs my groups as a table to OUT, with a header row naming the
+     *  columns. Keys are aligned left and values right. */
+    void report(ReportBuilder out) {
+	ArrayList<String[]> rows = new ArrayList<String[]>();
+	String[] header = new String[_keys.size() + _functions.size()];
+	for (int c = 0; c < header.length; c++) {
+	    header[c] = c < _keys.size() ? _keys.get(c)
+		: _functions.get(c - _keys.size());
+	}
+	rows.add(header);
+	for (Map.Entry<String, LinkedHashMap<String, Accumulator>> outer
+		 : _groups.entrySet()) {
+	    for (Map.Entry<String, Accumulator> inner
+		     : outer.getValue().entrySet()) {
+		String[] row = new String[header.length];
+		row[0] = outer.getKey();
+		if (_keys.size() == 2) {
+		    row[1] = inner.getKey();
+		}
+		for (int f = 0; f < _functions.size(); f++) {
+		    row[_keys.size() + f] =
+			inner.getValue().value(_functions.get(f));
+		}
+		rows.add(row);
+	    }
+	}
+	int[] widths = new int[header.length];
+	for (String[] row : rows) {
+	    for (int c = 0; c < row.length; c++) {
+		widths[c] = Math.max(widths[c], row[c].length());
+	    }
+	}
+	out.line("query results:").line();
+	for (String[] row : rows) {
+	    out.text(" ");
+	    for (int c = 0; c < row.length; c++) {
+		int pad = widths[c] - row[c].length();
+		if (c < _keys.size()) {
+		    out.text(" ").text(row[c]).spaces(pad);
+		} else {
+		    out.text(" ").spaces(pad).text(row[c]);
+		}
+	    }
+	    out.line();
+	}
+	out.line();
+    }
+
+
+    /** An ACCUMULATOR holds the running number, sum, smallest and largest
+     *  of the amounts in cents of the Items of one group. */
+    private static class Accumulator {
+
+	/** The number of Items added. */
+	private long _count;
+	/** The sum of the amounts added. */
+	private long _sum;
+	/** The smallest amount added. */
+	private long _min = Long.MAX_VALUE;
+	/** The largest amount added. */
+	private long _max = Long.MIN_VALUE;
+
+	/** Adds an Item with amount AMOUNT. */
+	void add(long amount) {
+	    _count++;
+	    _sum += amount;
+	    _min = Math.min(_min, amount);
+	    _max = Math.max(_max, amount);
+	}
+
+	/** Adds COUNT Items whose amounts add up to SUM, without knowing
+	 *  the smallest or largest of them. */
+	void add(long count, long sum) {
+	    _count += count;
+	    _sum += sum;
+	}
+
+	/** Returns the average amount, rounded half away from zero to the
+	 *  nearest cent. There must be at least one Item. */
+	long average() {
+	    long average = _sum / _count;
+	    long remainder = _sum % _count;
+	    if (2 * Math.abs(remainder) >= _count) {
+		average += Long.signum(_sum);
+	    }
+	    return average;
+	}
+
+	/** Returns the value of the aggregate function FUNCTION written as
+	 *  a cell of a table, or "-" if it has no value because no Items
+	 *  were added. */
+	String value(String function) {
+	    if (function.equals("count")) {
+		return Long.toString(_count);
+	    } else if (function.equals("sum")) {
+		return Money.format(_sum);
+	    } else if (_count == 0) {
+		return "-";
+	    } else if (function.equals("avg")) {
+		return Money.format(average());
+	    } else if (function.equals("min")) {
+		return Money.format(_min);
+	    } else {
+		return Money.format(_max);
+	    }
+	}
+
+    }
+
+}
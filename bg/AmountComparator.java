@@ -0,0 +1,77 @@
+package bg;
+
+/** An AMOUNTCOMPARATOR simply represents a binary function on
+ *  two amounts of cents using one of the standard comparators. Each
+ *  comparator also carries a rough estimate of the fraction of months
+ *  that pass a condition using it, which is used to decide the order in
+ *  which conditions are tested.
+ *  @author Brodie Vivio
+ */
+enum AmountComparator {
+
+    EQ("==", 0.05) {
+	boolean compare(long val1, long val2) {
+	    return val1 == val2;
+	}
+    },
+    NE("!=", 0.95) {
+	boolean compare(long val1, long val2) {
+	    return val1 != val2;
+	}
+    },
+    LT("<", 0.5) {
+	boolean compare(long val1, long val2) {
+	    return val1 < val2;
+	}
+    },
+    LE("<=", 0.5) {
+	boolean compare(long val1, long val2) {
+	    return val1 <= val2;
+	}
+    },
+    GE(">=", 0.5) {
+	boolean compare(long val1, long val2) {
+	    return val1 >= val2;
+	}
+    },
+    GT(">", 0.5) {
+	boolean compare(long val1, long val2) {
+	    return val1 > val2;
+	}
+    };
+
+    /** The string representation of my compare function. */
+    private final String _compareString;
+    /** The estimated fraction of values for which I return true. */
+    private final double _selectivity;
+
+    AmountComparator(String compareString, double selectivity) {
+	_compareString = compareString;
+	_selectivity = selectivity;
+    }
+
+    /** Returns the AmountComparator written as COMPARESTRING, or null if
+     *  there is none. */
+    static AmountComparator parse(String compareString) {
+	for (AmountComparator comp : values()) {
+	    if (comp._compareString.equals(compareString)) {
+		return comp;
+	    }
+	}
+	return null;
+    }
+
+    /** Returns the string this AmountComparator is written as. */
+    @Override
+    public String toString() {
+	return _compareString;
+    }
+
+    /** Returns the estimated fraction of values for which I return
+     *  true. */
+    double getSelectivity() {
+	return _selectivity;
+    }
+
+    abstract boolean compare(long val1, long val2);
+}
@@ -0,0 +1,378 @@
+package bg;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+
+/** A BGIREADER reads a .bgi file straight out of a byte buffer that is
+ *  filled from a FileChannel. Unlike a Scanner it does not use regular
+ *  expressions: dates and amounts are parsed by hand, amounts going straight
+ *  to cents, and a String is only made for the names that are actually
+ *  kept. Items are read one at a time with nextItem(), after which the
+ *  parts of the current item can be retrieved with the getters.
+ *  @author Brodie Vivio
+ */
+class BGIReader implements Closeable {
+
+    /** The size of my read buffer in bytes. */
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    /** The channel I read from. */
+    private final FileChannel _channel;
+    /** My read buffer. */
+    private final ByteBuffer _buffer;
+    /** The array backing _buffer. */
+    private final byte[] _bytes;
+    /** The position of the next unread byte in _bytes. */
+    private int _pos;
+    /** The number of valid bytes in _bytes. */
+    private int _limit;
+    /** The number of the line currently being read. */
+    private int _lineNum;
+    /** The bytes of the most recently read token. */
+    private byte[] _token;
+    /** The length of the most recently read token. */
+    private int _tokenLen;
+
+    /** The name of the month in my file. */
+    private String _name;
+    /** The number of days in the month in my file. */
+    private int _days;
+    /** The categories of the month in my file. */
+    private String[] _cats;
+    /** The categories of the month in my file as bytes. */
+    private byte[][] _catBytes;
+
+    /** The index into _cats of the category of the current item. */
+    private int _cat;
+    /** The date of the current item. */
+    private int _date;
+    /** The bytes of the name of the current item. */
+    private byte[] _itemName;
+    /** The length of the name of the current item. */
+    private int _itemNameLen;
+    /** The amount of the current item in cents. */
+    private long _amount;
+
+    /** Creates a new BGIReader for the file named FILENAME. */
+    BGIReader(String fileName) throws IOException {
+	_channel = new FileInputStream(fileName).getChannel();
+	_buffer = ByteBuffer.allocate(BUFFER_SIZE);
+	_bytes = _buffer.array();
+	_token = new byte[64];
+	_itemName = new byte[64];
+	_lineNum = 1;
+    }
+
+    /** Closes my file. */
+    public void close() throws IOException {
+	_channel.close();
+    }
+
+    /** Returns the number of the line currently being read. */
+    int getLineNum() {
+	return _lineNum;
+    }
+
+    /** Reads the first line of my file, which holds the number of the
+     *  month, its name and its number of days. Anything else on the line
+     *  is ignored. */
+    void readHeader() throws IOException {
+	readToken();
+	parseInt();
+	if (readToken() == 0) {
+	    throw formatError();
+	}
+	_name = tokenString();
+	readToken();
+	_days = parseInt();
+	while (peek() >= 0 && peek() != '\n') {
+	    _pos++;
+	}
+	endLine();
+    }
+
+    /** Returns the name of the month in my file. readHeader() must have
+     *  been called first. */
+    String getName() {
+	return _name;
+    }
+
+    /** Returns the number of days in the month in my file. readHeader()
+     *  must have been called first. */
+    int getDays() {
+	return _days;
+    }
+
+    /** Reads the second line of my file and returns the names of the
+     *  categories on it, which are separated by a comma and a space. */
+    String[] readCats() throws IOException {
+	_tokenLen = 0;
+	while (peek() >= 0 && peek() != '\n') {
+	    append(_bytes[_pos++]);
+	}
+	if (_tokenLen > 0 && _token[_tokenLen - 1] == '\r') {
+	    _tokenLen--;
+	}
+	setCats(tokenString().split(", "));
+	endLine();
+	return _cats;
+    }
+
+    /** Returns the byte offset in my file of the next unread byte. */
+    long getOffset() throws IOException {
+	return _channel.position() - _limit + _pos;
+    }
+
+    /** Moves me to byte OFFSET of my file, which must be the start of
+     *  line number LINENUM, to read items of the categories CATS from
+     *  there on. */
+    void seek(long offset, int lineNum, String[] cats) throws IOException {
+	_channel.position(offset);
+	_pos = 0;
+	_limit = 0;
+	_lineNum = lineNum;
+	setCats(cats);
+    }
+
+    /** Reads the next item of my file, skipping blank lines. Returns false
+     *  iff there are no items left. readCats() must have been called
+     *  first. */
+    boolean nextItem() throws IOException {
+	while (true) {
+	    skipSpaces();
+	    int c = peek();
+	    if (c < 0) {
+		return false;
+	    } else if (c != '\n') {
+		break;
+	    }
+	    endLine();
+	}
+	readToken();
+	_cat = findCat();
+	readToken();
+	_date = parseInt();
+	if (readToken() == 0) {
+	    throw formatError();
+	}
+	byte[] swap = _itemName;
+	_itemName = _token;
+	_itemNameLen = _tokenLen;
+	_token = swap;
+	readToken();
+	_amount = parseAmount();
+	skipSpaces();
+	if (peek() >= 0 && peek() != '\n') {
+	    throw formatError();
+	}
+	endLine();
+	return true;
+    }
+
+    /** Returns the index of the category of the current item within the
+     *  array returned by readCats(). */
+    int getCatIndex() {
+	return _cat;
+    }
+
+    /** Returns the category of the current item. */
+    String getCat() {
+	return _cats[_cat];
+    }
+
+    /** Returns the date of the current item. */
+    int getDate() {
+	return _date;
+    }
+
+    /** Returns the name of the current item. */
+    String getItemName() {
+	return new String(_itemName, 0, _itemNameLen, StandardCharsets.UTF_8);
+    }
+
+    /** Returns the amount of the current item in cents. */
+    long getAmount() {
+	return _amount;
+    }
+
+    /** Returns an exception reporting bad formatting on the current
+     *  line. */
+    RuntimeException formatError() {
+	return new RuntimeException(String.format(
+	    "line number %d has incorrect formatting%n", _lineNum));
+    }
+
+    /** Sets the categories that items may belong to to CATS. */
+    private void setCats(String[] cats) {
+	_cats = cats;
+	_catBytes = new byte[_cats.length][];
+	for (int i = 0; i < _cats.length; i++) {
+	    _catBytes[i] = _cats[i].getBytes(StandardCharsets.UTF_8);
+	}
+    }
+
+    /** Returns the next byte of my file without consuming it, or -1 if
+     *  there are no bytes left. */
+    private int peek() throws IOException {
+	if (_pos == _limit) {
+	    _buffer.clear();
+	    int n = _channel.read(_buffer);
+	    if (n <= 0) {
+		return -1;
+	    }
+	    _pos = 0;
+	    _limit = n;
+	}
+	return _bytes[_pos] & 0xff;
+    }
+
+    /** Skips over any spaces, tabs and carriage returns. */
+    private void skipSpaces() throws IOException {
+	int c = peek();
+	while (c == ' ' || c == '\t' || c == '\r' || c == '\f') {
+	    _pos++;
+	    c = peek();
+	}
+    }
+
+    /** Consumes the newline ending the current line, if there is one. */
+    private void endLine() throws IOException {
+	if (peek() == '\n') {
+	    _pos++;
+	}
+	_lineNum++;
+    }
+
+    /** Reads the next token on the current line into _token and returns
+     *  its length, which is 0 if the line has no tokens left. */
+    private int readToken() throws IOException {
+	skipSpaces();
+	_tokenLen = 0;
+	int c = peek();
+	while (c > ' ') {
+	    append((byte) c);
+	    _pos++;
+	    c = peek();
+	}
+	return _tokenLen;
+    }
+
+    /** Appends B to _token, growing it if needed. */
+    private void append(byte b) {
+	if (_tokenLen == _token.length) {
+	    byte[] bigger = new byte[2 * _token.length];
+	    System.arraycopy(_token, 0, bigger, 0, _tokenLen);
+	    _token = bigger;
+	}
+	_token[_tokenLen++] = b;
+    }
+
+    /** Returns the current token as a String. */
+    private String tokenString() {
+	return new String(_token, 0, _tokenLen, StandardCharsets.UTF_8);
+    }
+
+    /** Returns the index of the category named by the current token. */
+    private int findCat() {
+	for (int i = 0; i < _catBytes.length; i++) {
+	    byte[] cat = _catBytes[i];
+	    if (cat.length != _tokenLen) {
+		continue;
+	    }
+	    int j = 0;
+	    while (j < _tokenLen && cat[j] == _token[j]) {
+		j++;
+	    }
+	    if (j == _tokenLen) {
+		return i;
+	    }
+	}
+	throw formatError();
+    }
+
+    /** Returns the current token parsed as an int. */
+    private int parseInt() {
+	int i = 0;
+	boolean negative = false;
+	if (_tokenLen > 0 && (_token[0] == '-' || _token[0] == '+')) {
+	    negative = _token[0] == '-';
+	    i = 1;
+	}
+	if (i == _tokenLen || _tokenLen - i > 9) {
+	    throw formatError();
+	}
+	int result = 0;
+	for (; i < _tokenLen; i++) {
+	    int digit = _token[i] - '0';
+	    if (digit < 0 || digit > 9) {
+		throw formatError();
+	    }
+	    result = 10 * result + digit;
+	}
+	return negative ? -result : result;
+    }
+
+    /** Returns the current token parsed as an amount in cents. */
+    private long parseAmount() {
+	try {
+	    return Money.parse(_token, 0, _tokenLen);
+	} catch (NumberFormatException e) {
+	    throw formatError();
+	}
+    }
+
+
+    /** An ITEMSOURCE reads the items of a lazily loaded .bgi file by
+     *  seeking straight to the line after its categories. It only does so
+     *  while the file has the modification time and size it had when it
+     *  was loaded, since once the file is rewritten the saved offset no
+     *  longer points at its items. */
+    static class ItemSource implements MonthSource {
+
+	/** The name of my file. */
+	private final String _fileName;
+	/** The byte offset of the first item line of my file. */
+	private final long _offset;
+	/** The line number of the first item line of my file. */
+	private final int _lineNum;
+	/** The modification time of my file when it was loaded. */
+	private final long _modified;
+	/** The size in bytes of my file when it was loaded. */
+	private final long _size;
+
+	/** Creates a new ItemSource for the items of file FILENAME, which
+	 *  start at byte OFFSET on line LINENUM. The file had modification
+	 *  time MODIFIED and SIZE bytes when it was loaded. */
+	ItemSource(String fileName, long offset, int lineNum, long modified,
+		   long size) {
+	    _fileName = fileName;
+	    _offset = offset;
+	    _lineNum = lineNum;
+	    _modified = modified;
+	    _size = size;
+	}
+
+	public void readItems(Month month) throws IOException {
+	    File file = new File(_fileName);
+	    if (file.lastModified() != _modified || file.length() != _size) {
+		throw new IOException(String.format(
+		    "file %s has changed since it was loaded", _fileName));
+	    }
+	    String[] cats = month.getCats().toArray(new String[0]);
+	    try (BGIReader in = new BGIReader(_fileName)) {
+		in.seek(_offset, _lineNum, cats);
+		while (in.nextItem()) {
+		    month.addItem(in.getCat(), in.getItemName(), in.getDate(),
+				  in.getAmount());
+		}
+	    }
+	}
+
+    }
+
+}
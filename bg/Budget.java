@@ -1,67 +1,374 @@
 package bg;
 
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
 
 /** A BUDGET represents a collection of MONTH objects, which each represent
  *  one .bgi file. So a BUDGET holds all of the current .bgi files loaded into
- *  the program and can thus be used to calulate totals and such.
+ *  the program and can thus be used to calulate totals and such. All
+ *  totals are in cents. A BUDGET also indexes its months by name and by
+ *  the categories they contain, so that looking up a month or the months
+ *  containing a category does not scan every month. Months are not
+ *  changed once added, so one Month may be shared by several Budgets.
+ *  Items are added to and removed from a Month through its Budget, which
+ *  replaces the Month by a changed copy and updates its totals by the
+ *  totals of the two rather than adding them all up again.
+ *
+ *  A Budget may be read by any number of threads while one thread changes
+ *  it. Its Months, indices and totals are kept in a Version that is never
+ *  changed once published: a change builds a new Version off to the side
+ *  and then publishes it through a volatile reference, so readers take no
+ *  locks and never see a change half made. Changes are serialized with
+ *  each other. A new Version copies the list and map of Months and the
+ *  category totals, so every change takes time in proportion to the
+ *  number of Months and categories; of the lists of Months by category,
+ *  only those changed are copied. A snapshot of a Budget holds
+ *  its current Version and keeps reading it whatever changes are made
+ *  later, so that a report or query that reads a Budget many times sees
+ *  the same Months throughout.
  *  @author Brodie Vivio
 */
 class Budget {
 
-    /** The list of my Months. */
-    private ArrayList<Month> _months;
+    /** Sets _version if it has not changed since it was read. */
+    private static final AtomicReferenceFieldUpdater<Budget, Version> VERSION =
+	AtomicReferenceFieldUpdater.newUpdater(Budget.class, Version.class,
+					       "_version");
+
+    /** My current Version. */
+    private volatile Version _version;
 
     /** Creates a new empty Budget. */
     Budget() {
-	_months = new ArrayList<Month>();
+	this(new Version());
+    }
+
+    /** Creates a new Budget whose current Version is VERSION. */
+    private Budget(Version version) {
+	_version = version;
+    }
+
+    /** Returns a new Budget holding my current Version, which does not
+     *  see any change made to me from now on. It should only be read. */
+    Budget snapshot() {
+	return new Budget(_version);
     }
 
-    /** Adds Month MONTH to my list of Months. */
+    /** Adds Month MONTH to my list of Months. No other Month of mine may
+     *  have the same name. */
     void addMonth(Month month) {
-	_months.add(month);
+	addMonths(Collections.singletonList(month));
+    }
+
+    /** Adds all of MONTHS to my list of Months, in order, publishing them
+     *  all at once. No two Months of mine may have the same name. */
+    synchronized void addMonths(Collection<Month> months) {
+	Version next = new Version(_version);
+	for (Month month : months) {
+	    next.add(month);
+	}
+	publish(next);
+    }
+
+    /** Adds all of MONTHS, which belong to another Budget, to my list of
+     *  Months, as addMonths does. The .bgi files they were read from
+     *  belong to the other Budget, so the copies that replace them when
+     *  Items are added to or removed from them here have no file. */
+    synchronized void shareMonths(Collection<Month> months) {
+	Version next = new Version(_version);
+	for (Month month : months) {
+	    next.add(month);
+	    next._shared.add(month);
+	}
+	publish(next);
     }
 
     /** Removes Month MONTH from my list of Months. */
-    void removeMonth(Month month) {
-	_months.remove(month);
+    synchronized void removeMonth(Month month) {
+	if (!_version._months.contains(month)) {
+	    return;
+	}
+	Version next = new Version(_version);
+	next.remove(month);
+	publish(next);
+    }
+
+    /** Removes all of my Months. */
+    synchronized void clear() {
+	publish(new Version());
+    }
+
+    /** Replaces my Month OLD with FRESH, publishing both changes at once.
+     *  FRESH keeps OLD's place among my Months if it has the same name
+     *  and categories, and goes after the others otherwise. No other
+     *  Month of mine may have FRESH's name. */
+    synchronized void replaceMonth(Month old, Month fresh) {
+	Version next = new Version(_version);
+	if (old.getName().equals(fresh.getName())
+	    && old.getCats().equals(fresh.getCats())) {
+	    next.replace(old, fresh);
+	} else {
+	    next.remove(old);
+	    next.add(fresh);
+	}
+	publish(next);
+    }
+
+    /** Makes NEXT, which was built from my current Version, my current
+     *  Version. */
+    private void publish(Version next) {
+	next._number = _version._number + 1;
+	_version = next;
+    }
+
+    /** Adds a new Item with name NAME, date DATE and amount AMOUNT to
+     *  category CAT of my Month MONTH, and returns the copy of MONTH with
+     *  the Item that replaces it. The copy has MONTH's .bgi file unless
+     *  MONTH was shared with me by another Budget. */
+    synchronized Month addItem(Month month, String cat, String name,
+			       int date, long amount) {
+	Month fresh = copyFor(month, cat, name);
+	fresh.addItem(cat, name, date, amount);
+	replaceMonth(month, fresh);
+	return fresh;
+    }
+
+    /** Removes the Item at index I of category CAT of my Month MONTH, and
+     *  returns the copy of MONTH without the Item that replaces it. The
+     *  copy has MONTH's .bgi file unless MONTH was shared with me by
+     *  another Budget. */
+    synchronized Month removeItem(Month month, String cat, int i) {
+	Month fresh = copyFor(month, cat, null);
+	fresh.removeItem(cat, i);
+	replaceMonth(month, fresh);
+	return fresh;
+    }
+
+    /** Returns MONTH's copy for changing its category CAT, as
+     *  Month.copyFor(CAT, NAME) does, without a .bgi file if MONTH was
+     *  shared with me by another Budget. */
+    private Month copyFor(Month month, String cat, String name) {
+	Month fresh = month.copyFor(cat, name);
+	if (_version._shared.contains(month)) {
+	    fresh.setFile(null);
+	}
+	return fresh;
+    }
+
+    /** Returns my current Version with the totals of its pending Months
+     *  added in, reading their Items if needed. The result is published
+     *  unless I have changed meanwhile, so this is only done once. */
+    private Version resolved() {
+	Version version = _version;
+	if (version._pending.isEmpty()) {
+	    return version;
+	}
+	Version resolved = new Version(version);
+	for (Month month : version._pending) {
+	    resolved.addTotals(month, 1);
+	}
+	resolved._pending.clear();
+	VERSION.compareAndSet(this, version, resolved);
+	return resolved;
+    }
+
+    /** Returns the number of changes made to me so far, so that results
+     *  computed from me can be known to be out of date. */
+    long getVersion() {
+	return _version._number;
     }
 
     /** Returns my list of months. */
     List<Month> getMonths() {
-	return _months;
+	return Collections.unmodifiableList(_version._months);
     }
 
     /** Returns the total for the entire budget. */
-    double getTotal() {
-	double total = 0;
-	for (Month month : _months) {
-	    total += month.getTotal();
+    long getTotal() {
+	Stats.aggregated();
+	return resolved()._total;
+    }
+
+    /** Returns my Months containing the category CAT, in the order they
+     *  were added. */
+    List<Month> getMonths(String cat) {
+	ArrayList<Month> months = _version._monthsByCat.get(cat);
+	if (months == null) {
+	    return Collections.emptyList();
 	}
-	return total;
+	return Collections.unmodifiableList(months);
     }
 
     /** Returns the Month object with name NAME if it is in my month list
      *  or null otherwise. */
     Month getMonth(String name) {
-	for (Month month: _months) {
-	    if (month.getName().equals(name)) {
-		return month;
-	    }
-	}
-	return null;
+	return _version._monthsByName.get(name);
+    }
+
+    /** Returns true iff I contain a Month named NAME. */
+    boolean containsMonth(String name) {
+	return _version._monthsByName.containsKey(name);
+    }
+
+    /** Returns the names of all the categories of my Months. */
+    Set<String> getCats() {
+	return Collections.unmodifiableSet(_version._monthsByCat.keySet());
+    }
+
+    /** Returns true iff any of my Months contains the category CAT. */
+    boolean containsCat(String cat) {
+	return _version._monthsByCat.containsKey(cat);
     }
 
     /** Returns the total for the Category CAT. */
-    double getTotal(String cat) {
-	double total = 0;
-	for (Month month : _months) {
-	    if (month.getCats().contains(cat)) {
-		total += month.getTotal(cat);
+    long getTotal(String cat) {
+	Stats.aggregated();
+	Long total = resolved()._totals.get(cat);
+	return total == null ? 0 : total;
+    }
+
+
+    /** A VERSION is the state of a Budget at one time. It is only changed
+     *  while it is being built, before it is published. */
+    private static class Version {
+
+	/** The number of changes made to my Budget before I was published. */
+	private long _number;
+	/** The list of my Months. */
+	private final ArrayList<Month> _months;
+	/** My map from names of my Months to the Months. */
+	private final HashMap<String, Month> _monthsByName;
+	/** My map from category names to my Months containing them, in the
+	 *  order they are in _months. */
+	private final HashMap<String, ArrayList<Month>> _monthsByCat;
+	/** My map from category names to the totals of those categories
+	 *  over all my Months. */
+	private final HashMap<String, Long> _totals;
+	/** The total of all my Months. */
+	private long _total;
+	/** My lazily loaded Months whose totals were not yet known when
+	 *  they were added, and so are not yet included in _totals and
+	 *  _total. */
+	private final ArrayList<Month> _pending;
+	/** The lists of _monthsByCat made for me rather than shared with
+	 *  the Version I was copied from, which may be changed. */
+	private final Set<ArrayList<Month>> _owned;
+	/** My Months that were shared with my Budget by another Budget. */
+	private final Set<Month> _shared;
+
+	/** Creates a new empty Version. */
+	Version() {
+	    _months = new ArrayList<Month>();
+	    _monthsByName = new HashMap<String, Month>();
+	    _monthsByCat = new HashMap<String, ArrayList<Month>>();
+	    _totals = new HashMap<String, Long>();
+	    _pending = new ArrayList<Month>();
+	    _owned = Collections.newSetFromMap(
+		new IdentityHashMap<ArrayList<Month>, Boolean>());
+	    _shared = Collections.newSetFromMap(
+		new IdentityHashMap<Month, Boolean>());
+	}
+
+	/** Creates a new Version with the same Months as OTHER, to be
+	 *  changed. The lists of Months by category are only copied when
+	 *  they are changed. The categories are put in one at a time, so
+	 *  that they are listed in the same order as in OTHER. */
+	Version(Version other) {
+	    _months = new ArrayList<Month>(other._months);
+	    _monthsByName = new HashMap<String, Month>(other._monthsByName);
+	    _monthsByCat = new HashMap<String, ArrayList<Month>>();
+	    for (String cat : other._monthsByCat.keySet()) {
+		_monthsByCat.put(cat, other._monthsByCat.get(cat));
+	    }
+	    _totals = new HashMap<String, Long>(other._totals);
+	    _total = other._total;
+	    _pending = new ArrayList<Month>(other._pending);
+	    _number = other._number;
+	    _owned = Collections.newSetFromMap(
+		new IdentityHashMap<ArrayList<Month>, Boolean>());
+	    _shared = Collections.newSetFromMap(
+		new IdentityHashMap<Month, Boolean>());
+	    _shared.addAll(other._shared);
+	}
+
+	/** Returns my list of the Months containing the category CAT, which
+	 *  may be changed, creating it if there is none. */
+	private ArrayList<Month> ownMonths(String cat) {
+	    ArrayList<Month> months = _monthsByCat.get(cat);
+	    if (months == null || !_owned.contains(months)) {
+		months = months == null ? new ArrayList<Month>()
+		    : new ArrayList<Month>(months);
+		_monthsByCat.put(cat, months);
+		_owned.add(months);
 	    }
+	    return months;
 	}
-	return total;
+
+	/** Adds MONTH. */
+	void add(Month month) {
+	    _months.add(month);
+	    _monthsByName.put(month.getName(), month);
+	    for (String cat : month.getCats()) {
+		ownMonths(cat).add(month);
+	    }
+	    if (month.hasTotals()) {
+		addTotals(month, 1);
+	    } else {
+		_pending.add(month);
+	    }
+	}
+
+	/** Removes MONTH, which I contain. */
+	void remove(Month month) {
+	    _months.remove(month);
+	    _monthsByName.remove(month.getName());
+	    for (String cat : month.getCats()) {
+		ArrayList<Month> months = ownMonths(cat);
+		months.remove(month);
+		if (months.isEmpty()) {
+		    _monthsByCat.remove(cat);
+		}
+	    }
+	    if (!_pending.remove(month)) {
+		addTotals(month, -1);
+	    }
+	    _shared.remove(month);
+	}
+
+	/** Replaces my Month OLD with FRESH, which has the same name and
+	 *  categories, in the same place. */
+	void replace(Month old, Month fresh) {
+	    _months.set(_months.indexOf(old), fresh);
+	    _monthsByName.put(fresh.getName(), fresh);
+	    for (String cat : fresh.getCats()) {
+		ArrayList<Month> months = ownMonths(cat);
+		months.set(months.indexOf(old), fresh);
+	    }
+	    if (!_pending.remove(old)) {
+		addTotals(old, -1);
+	    }
+	    if (fresh.hasTotals()) {
+		addTotals(fresh, 1);
+	    } else {
+		_pending.add(fresh);
+	    }
+	    _shared.remove(old);
+	}
+
+	/** Adds the totals of MONTH, multiplied by SIGN, to my totals. */
+	void addTotals(Month month, int sign) {
+	    _total += sign * month.getTotal();
+	    for (String cat : month.getCats()) {
+		_totals.merge(cat, sign * month.getTotal(cat), Long::sum);
+	    }
+	}
+
     }
 
 }
@@ -0,0 +1,326 @@
+package bg;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/** A CATEGORY holds all of the Items of one budget category of a Month.
+ *  Rather than keeping an Item object for each purchase or deposit, the
+ *  dates, amounts and names of the Items are stored in parallel arrays,
+ *  with each name stored as an index into its Month's dictionary of item
+ *  names. Sums and scans thus run over contiguous memory. A Category can
+ *  also be a summary that only knows the number and total of its Items,
+ *  for a Month whose Items are not in memory.
+ *
+ *  For queries over ranges of days, a Category builds an index of its
+ *  Items sorted by date, with the running sums of their amounts, the
+ *  first time it is asked for one. The index is dropped whenever an Item
+ *  is added or removed.
+ *
+ *  A copy of a Category, made to change it while the original stays as
+ *  it is, shares the original's arrays. Items appended to the copy go in
+ *  the free room at their ends, which the original never reads, so an
+ *  append takes constant time however many Items there are. Only one of
+ *  the Categories sharing the arrays may claim each free place; the
+ *  others, and a copy that removes an Item, copy the arrays first.
+ *  @author Brodie Vivio
+ */
+class Category {
+
+    /** The number of Items a new Category has room for. */
+    private static final int INITIAL_CAPACITY = 8;
+    /** The most days between the first and last dates of my Items for
+     *  which they are indexed with a table of days. */
+    private static final int MAX_DAY_SPAN = 1 << 16;
+
+    /** My name, which is interned. */
+    private final String _name;
+    /** The number of Items in me. */
+    private int _size;
+    /** The dates of my Items. */
+    private int[] _dates;
+    /** The amounts of my Items in cents. */
+    private long[] _amounts;
+    /** The dictionary indices of the names of my Items. */
+    private int[] _nameIds;
+    /** The sum of the amounts of my Items in cents. */
+    private long _total;
+    /** The index of my Items by date, or null if it has not been built
+     *  since they last changed. */
+    private volatile DayIndex _dayIndex;
+    /** The number of places of my arrays claimed by me and the other
+     *  Categories sharing them, or null if no other Category does. */
+    private AtomicInteger _claimed;
+
+    /** Creates a new empty Category named NAME. */
+    Category(String name) {
+	_name = name.intern();
+	_dates = new int[INITIAL_CAPACITY];
+	_amounts = new long[INITIAL_CAPACITY];
+	_nameIds = new int[INITIAL_CAPACITY];
+    }
+
+    /** Creates a new Category named NAME holding the Items with the
+     *  dates DATES, amounts AMOUNTS and name indices NAMEIDS, which must
+     *  all have the same length. The arrays are used as they are, not
+     *  copied. */
+    Category(String name, int[] dates, long[] amounts, int[] nameIds) {
+	_name = name.intern();
+	_dates = dates;
+	_amounts = amounts;
+	_nameIds = nameIds;
+	_size = dates.length;
+	for (long amount : amounts) {
+	    _total += amount;
+	}
+    }
+
+    /** Creates a new Category holding the Items of OTHER, which must not
+     *  be a summary, and sharing its arrays. OTHER may not be changed
+     *  after this. */
+    Category(Category other) {
+	_name = other._name;
+	_size = other._size;
+	_total = other._total;
+	_dates = other._dates;
+	_amounts = other._amounts;
+	_nameIds = other._nameIds;
+	_claimed = other.claimed();
+    }
+
+    /** Creates a new Category named NAME that only records that it has
+     *  SIZE Items adding up to TOTAL, without holding the Items
+     *  themselves. */
+    Category(String name, int size, long total) {
+	_name = name.intern();
+	_size = size;
+	_total = total;
+    }
+
+    /** Returns my name. */
+    String getName() {
+	return _name;
+    }
+
+    /** Adds an Item with date DATE, amount AMOUNT in cents and the name
+     *  with dictionary index NAMEID. */
+    void add(int date, long amount, int nameId) {
+	if (_size == _dates.length
+	    || _claimed != null && !_claimed.compareAndSet(_size, _size + 1)) {
+	    int capacity = Math.max(2 * _size, INITIAL_CAPACITY);
+	    _dates = Arrays.copyOf(_dates, capacity);
+	    _amounts = Arrays.copyOf(_amounts, capacity);
+	    _nameIds = Arrays.copyOf(_nameIds, capacity);
+	    _claimed = null;
+	}
+	_dates[_size] = date;
+	_amounts[_size] = amount;
+	_nameIds[_size] = nameId;
+	_size++;
+	_total += amount;
+	_dayIndex = null;
+    }
+
+    /** Removes my Item at index I, moving the Items after it down by one
+     *  so that my Items stay in the order they were added. */
+    void remove(int i) {
+	_total -= _amounts[i];
+	if (_claimed != null) {
+	    int capacity = Math.max(_size, INITIAL_CAPACITY);
+	    _dates = Arrays.copyOf(_dates, capacity);
+	    _amounts = Arrays.copyOf(_amounts, capacity);
+	    _nameIds = Arrays.copyOf(_nameIds, capacity);
+	    _claimed = null;
+	}
+	int after = _size - i - 1;
+	System.arraycopy(_dates, i + 1, _dates, i, after);
+	System.arraycopy(_amounts, i + 1, _amounts, i, after);
+	System.arraycopy(_nameIds, i + 1, _nameIds, i, after);
+	_size--;
+	_dayIndex = null;
+    }
+
+    /** Returns the count of places claimed in my arrays, which I am about
+     *  to share with a copy of me, starting it if no one shares them
+     *  yet. */
+    private synchronized AtomicInteger claimed() {
+	if (_claimed == null) {
+	    _claimed = new AtomicInteger(_size);
+	}
+	return _claimed;
+    }
+
+    /** Returns the index of my first Item with date DATE, amount AMOUNT
+     *  and the name with dictionary index NAMEID, or -1 if there is
+     *  none. */
+    int find(int date, long amount, int nameId) {
+	for (int i = 0; i < _size; i++) {
+	    if (_dates[i] == date && _amounts[i] == amount
+		&& _nameIds[i] == nameId) {
+		return i;
+	    }
+	}
+	return -1;
+    }
+
+    /** Returns the number of Items in me. */
+    int size() {
+	return _size;
+    }
+
+    /** Returns the date of my Item at index I. */
+    int getDate(int i) {
+	return _dates[i];
+    }
+
+    /** Returns the amount in cents of my Item at index I. */
+    long getAmount(int i) {
+	return _amounts[i];
+    }
+
+    /** Returns the dictionary index of the name of my Item at index I. */
+    int getNameId(int i) {
+	return _nameIds[i];
+    }
+
+    /** Returns the sum of the amounts of my Items in cents. */
+    long getTotal() {
+	return _total;
+    }
+
+    /** Returns the sum of the amounts in cents of my Items dated from
+     *  day FROM to day TO, inclusive. */
+    long getTotal(int from, int to) {
+	if (from > to) {
+	    return 0;
+	}
+	DayIndex index = dayIndex();
+	return index.sumBefore(to + 1L) - index.sumBefore(from);
+    }
+
+    /** Returns the number of my Items dated from day FROM to day TO,
+     *  inclusive. */
+    int count(int from, int to) {
+	DayIndex index = dayIndex();
+	return Math.max(index.position(to + 1L) - index.position(from), 0);
+    }
+
+    /** Returns the indices of my Items dated from day FROM to day TO,
+     *  inclusive, in order of date and, within a day, of index. */
+    int[] between(int from, int to) {
+	DayIndex index = dayIndex();
+	int start = index.position(from);
+	return Arrays.copyOfRange(index._order, start,
+				  Math.max(index.position(to + 1L), start));
+    }
+
+    /** Returns my index by date, building it if needed. My Items must be
+     *  in memory. */
+    private DayIndex dayIndex() {
+	DayIndex index = _dayIndex;
+	if (index == null) {
+	    index = new DayIndex(_dates, _amounts, _size);
+	    _dayIndex = index;
+	}
+	return index;
+    }
+
+
+    /** A DAYINDEX orders the Items of a Category by date and keeps the
+     *  running sums of their amounts in that order, so that the number
+     *  and total of the Items in any range of days take two lookups. When
+     *  the dates span at most MAX_DAY_SPAN days, the Items are ordered by
+     *  a counting sort and each day is looked up directly in a table;
+     *  otherwise they are sorted and days are found by binary search. */
+    private static class DayIndex {
+
+	/** The indices of the Items, in order of date. */
+	private final int[] _order;
+	/** _sums[P] is the sum of the amounts of the first P Items in
+	 *  _order. */
+	private final long[] _sums;
+	/** The earliest date of the Items. */
+	private final int _first;
+	/** _starts[D] is the position in _order of the first Item dated
+	 *  on or after day _first + D, or null if the dates span too many
+	 *  days. */
+	private final int[] _starts;
+	/** The dates of the Items in _order, kept only if _starts is
+	 *  null. */
+	private final int[] _sortedDates;
+
+	/** Creates the index of the first SIZE Items with dates DATES
+	 *  and amounts AMOUNTS. */
+	DayIndex(int[] dates, long[] amounts, int size) {
+	    int first = Integer.MAX_VALUE;
+	    int last = Integer.MIN_VALUE;
+	    for (int i = 0; i < size; i++) {
+		first = Math.min(first, dates[i]);
+		last = Math.max(last, dates[i]);
+	    }
+	    _order = new int[size];
+	    if (size > 0 && (long) last - first < MAX_DAY_SPAN) {
+		_first = first;
+		_starts = new int[last - first + 2];
+		for (int i = 0; i < size; i++) {
+		    _starts[dates[i] - first + 1]++;
+		}
+		for (int d = 1; d < _starts.length; d++) {
+		    _starts[d] += _starts[d - 1];
+		}
+		int[] next = Arrays.copyOf(_starts, _starts.length - 1);
+		for (int i = 0; i < size; i++) {
+		    _order[next[dates[i] - first]++] = i;
+		}
+		_sortedDates = null;
+	    } else {
+		long[] keys = new long[size];
+		for (int i = 0; i < size; i++) {
+		    keys[i] = (long) dates[i] << 32 | i;
+		}
+		Arrays.sort(keys);
+		_first = 0;
+		_starts = null;
+		_sortedDates = new int[size];
+		for (int p = 0; p < size; p++) {
+		    _order[p] = (int) keys[p];
+		    _sortedDates[p] = (int) (keys[p] >> 32);
+		}
+	    }
+	    _sums = new long[size + 1];
+	    for (int p = 0; p < size; p++) {
+		_sums[p + 1] = _sums[p] + amounts[_order[p]];
+	    }
+	}
+
+	/** Returns the position in _order of the first Item dated on or
+	 *  after day DAY. */
+	int position(long day) {
+	    if (_starts != null) {
+		long d = day - _first;
+		if (d <= 0) {
+		    return 0;
+		}
+		return d < _starts.length ? _starts[(int) d] : _order.length;
+	    }
+	    int lo = 0;
+	    int hi = _sortedDates.length;
+	    while (lo < hi) {
+		int mid = (lo + hi) >>> 1;
+		if (_sortedDates[mid] < day) {
+		    lo = mid + 1;
+		} else {
+		    hi = mid;
+		}
+	    }
+	    return lo;
+	}
+
+	/** Returns the sum of the amounts of the Items dated before day
+	 *  DAY. */
+	long sumBefore(long day) {
+	    return _sums[position(day)];
+	}
+
+    }
+
+}
@@ -1,15 +1,37 @@
 package bg;
 
 import java.util.Scanner;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
 import java.io.PrintStream;
 import java.io.File;
 import java.io.FileReader;
+import java.io.FileWriter;
 import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
 import java.io.FilenameFilter;
+import java.io.Writer;
 import java.lang.RuntimeException;
-import java.util.HashSet;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
 
 /** The COMMANDINTERPRETER is the object for the CLI that the user
  *  interacts with by typing valid bgSQL commands. The input and output streams
@@ -20,8 +42,23 @@ import java.util.Arrays;
 */
 class CommandInterpreter {
 
+	/** The name of the Budget that a new session starts in. */
+	private static final String DEFAULT_BUDGET = "main";
+	/** The commands that change budgets or write files, which read-only
+	 *  sessions may not run. */
+	private static final Set<String> WRITING_COMMANDS = Set.of(
+		"load", "remove", "clear", "switch", "create", "add", "watch",
+		"unwatch", "save");
+
 	/** The FileNameFilter to accept only .bgi files */
 	private static BGIFileFilter _bgiFileFilter = new BGIFileFilter();
+	/** The pool of threads used to parse .bgi files concurrently. */
+	private static ExecutorService _loadPool = Executors.newFixedThreadPool(
+		Runtime.getRuntime().availableProcessors(), r -> {
+			Thread thread = new Thread(r, "bg-load");
+			thread.setDaemon(true);
+			return thread;
+		});
 
     /** My input. */
     private Scanner _input;
@@ -29,12 +66,35 @@ class CommandInterpreter {
     private PrintStream _output;
     /** True iff this session of budgetGuide should end. */
     private boolean _end;
-    /** The Budget holding all of my data. */
+    /** The number of errors I have printed. */
+    private int _errors;
+    /** My Budgets by name, in the order they were created. Months are
+     *  never changed once added to a Budget, so Budgets share them. */
+    private LinkedHashMap<String, Budget> _budgets;
+    /** The ResultCache of each of my Budgets, by name. */
+    private HashMap<String, ResultCache> _caches;
+    /** The name of the Budget that commands work on. */
+    private String _budgetName;
+    /** The Budget that commands work on. */
     private Budget _budget;
-    /** The set of the names of all the categories in my _budget. */
-    private HashSet<String> _cats;
-    /** The set of the names of all my months. */
-    private HashSet<String> _monthNames;
+    /** A snapshot of _budget taken when the current statement started,
+     *  which statements that only read the budget read, so that they see
+     *  the same Months throughout while _budget changes. */
+    private Budget _view;
+    /** The rendered results of recent reports and select queries on
+     *  _budget. */
+    private ResultCache _cache;
+    /** The buffer that my reports and query results are built in. */
+    private ReportBuilder _report;
+    /** The Watchers of the directories whose .bgi files are kept loaded,
+     *  by the absolute path of the directory. */
+    private HashMap<Path, Watcher> _watchers;
+    /** True iff I may only read my budget, and no files, as a session of
+     *  a Server. */
+    private boolean _readOnly;
+    /** The version of _budget that the results in _cache were computed
+     *  from, if I am read-only and so others change it. */
+    private long _cachedVersion;
 
 
     /** Creates a new CommandInterpreter object with an empty Budget.
@@ -50,9 +110,27 @@ class CommandInterpreter {
 		_input = inp;
 		_output = out;
 		_end = false;
-		_budget = new Budget();
-		_cats = new HashSet<String>();
-		_monthNames = new HashSet<String>();
+		_budgets = new LinkedHashMap<String, Budget>();
+		_caches = new HashMap<String, ResultCache>();
+		_budgets.put(DEFAULT_BUDGET, new Budget());
+		_caches.put(DEFAULT_BUDGET, new ResultCache());
+		switchTo(DEFAULT_BUDGET);
+		_report = new ReportBuilder();
+		_watchers = new HashMap<Path, Watcher>();
+    }
+
+    /** Creates a new read-only CommandInterpreter over BUDGET, which
+     *  others may be changing meanwhile, as a session of a Server. Input
+     *  comes from Scanner INP and output is to the PrintStream OUT.
+     *  Commands that would change a budget or write files, and reports
+     *  on directories, are refused, so that a session can only read
+     *  BUDGET. */
+    CommandInterpreter(Scanner inp, PrintStream out, Budget budget) {
+		this(inp, out);
+		_budgets.put(DEFAULT_BUDGET, budget);
+		switchTo(DEFAULT_BUDGET);
+		_readOnly = true;
+		_cachedVersion = _view.getVersion();
     }
 
     /** Closes the output PrintStream. */
@@ -65,26 +143,75 @@ class CommandInterpreter {
 		return _end;
     }
 
-    /** Returns my Budget object. */
+    /** Returns the Budget that commands work on. */
     Budget getBudget() {
 		return _budget;
     }
 
-    /** Adds any new categories that have been added to any of the months
-     *  in _budget to _cats. */
-    private void collectCats() {
-		for (Month month : _budget.getMonths()) {
-	    	for (String cat : month.getCats()) {
-			_cats.add(cat);
-	    	}
-		}
+    /** Makes my Budget named NAME, which must exist, the one that
+     *  commands work on. */
+    private void switchTo(String name) {
+		_budgetName = name;
+		_budget = _budgets.get(name);
+		_view = _budget.snapshot();
+		_cache = _caches.get(name);
     }
 
     /** Reads and executes one statement. */
     void statement() {
 		_output.print(">> ");
 		String line = _input.nextLine();
-		String[] coms = line.split(" ");
+		execute(line.split(" "));
+    }
+
+    /** Executes the statement whose words are COMS, printing any error
+     *  it causes. The statement reads a snapshot of the current budget.
+     *  It holds my lock, so that Months of watched directories are not
+     *  swapped while it runs, which could leave _cache holding results
+     *  for Months that were just replaced. */
+    synchronized void execute(String[] coms) {
+		_view = _budget.snapshot();
+		if (_readOnly && _view.getVersion() != _cachedVersion) {
+			_cache.clear();
+			_cachedVersion = _view.getVersion();
+		}
+		try {
+			command(coms);
+		} catch (RuntimeException e) {
+			error("%s%n", describe(e));
+		}
+    }
+
+    /** Returns the message of E, or the name of its class if it has
+     *  none. */
+    private static String describe(RuntimeException e) {
+		return e.getMessage() != null ? e.getMessage() : e.getClass().getName();
+    }
+
+    /** Returns the number of errors printed so far. */
+    int getErrors() {
+		return _errors;
+    }
+
+    /** Prints "ERROR: " followed by FORMAT formatted with ARGS, as by
+     *  printf, and counts the error. */
+    private synchronized void error(String format, Object... args) {
+		_errors++;
+		_output.print("ERROR: ");
+		_output.printf(format, args);
+    }
+
+    /** Executes the statement whose words are COMS. */
+    private void command(String[] coms) {
+		if (_readOnly && WRITING_COMMANDS.contains(coms[0])) {
+			error("%s is not allowed in a read-only session%n", coms[0]);
+			return;
+		}
+		if (_readOnly && coms[0].equals("report") && coms.length == 4
+			&& coms[2].equals("from")) {
+			error("report from is not allowed in a read-only session%n");
+			return;
+		}
 		switch (coms[0]) {
 			case "quit":
 	    		quitCommand();
@@ -105,7 +232,7 @@ class CommandInterpreter {
 	    		saveCommand(coms);
 	    		return;
 			case "select":
-	    		selectCommand(coms, _output);
+	    		selectCommand(coms);
 	    		return;
 			case "remove":
 	    		removeCommand(coms);
@@ -116,9 +243,23 @@ class CommandInterpreter {
 			case "clear":
 	    		clearCommand();
 	    		return;
+			case "switch":
+				switchCommand(coms);
+				return;
+			case "create":
+				createCommand(coms);
+				return;
+			case "add":
+				addCommand(coms);
+				return;
+			case "watch":
+				watchCommand(coms);
+				return;
+			case "unwatch":
+				unwatchCommand(coms);
+				return;
 			default:
-	    		_output.printf("ERROR: unknown command%n");
-	    		statement();
+	    		error("unknown command%n");
 		}
     }
 
@@ -141,419 +282,1227 @@ class CommandInterpreter {
 	    	helpFile.close();
 	    	_output.println();
 		} catch (FileNotFoundException e) {
-	    	_output.println("ERROR: help.txt not found");
+	    	error("help.txt not found%n");
 		}
     }
 
-    /** Restarts the program by clearing all loaded data. */
+    /** Clears all the data loaded into the current budget. Other budgets
+     *  keep their Months. */
     private void clearCommand() {
-		_budget = new Budget();
-		_cats = new HashSet<String>();
-		_monthNames = new HashSet<String>();
+		_budget.clear();
+		_cache.clear();
 		_output.println("cleared all data");
     }
 
-    /** Performs a remove command by removing a Month from the budget. */
+    /** Reads and executes a switch to command, which makes another budget
+     *  the one that commands work on. */
+    private void switchCommand(String[] args) {
+		if (args.length != 3 || !args[1].equals("to")) {
+			error("invalid switch command%n");
+			return;
+		}
+		if (!_budgets.containsKey(args[2])) {
+			error("no budget named %s%n", args[2]);
+			return;
+		}
+		switchTo(args[2]);
+		_output.printf("switched to budget %s%n", args[2]);
+    }
+
+    /** Reads and executes a create budget command, which creates a new
+     *  budget that is empty or holds the months of another budget that
+     *  meet some conditions. The months are shared with the other budget,
+     *  not copied, so this takes time in proportion to their number
+     *  rather than to their items. Their .bgi files stay the other
+     *  budget's: items added to or removed from them in the new budget
+     *  are not written to the files. */
+    private void createCommand(String[] args) {
+		if (!(args.length == 3 || args.length >= 5 && args[3].equals("from"))
+			|| !args[1].equals("budget")
+			|| args.length > 5 && !args[5].equals("where")) {
+			error("invalid create command%n");
+			return;
+		}
+		String name = args[2];
+		if (_budgets.containsKey(name)) {
+			error("budget %s already exists%n", name);
+			return;
+		}
+		Budget budget = new Budget();
+		if (args.length > 3) {
+			Budget source = _budgets.get(args[4]);
+			if (source == null) {
+				error("no budget named %s%n", args[4]);
+				return;
+			}
+			if (args.length == 5) {
+				budget.shareMonths(source.getMonths());
+			} else {
+				ArrayList<Condition> conds = parseConditions(
+					Arrays.copyOfRange(args, 6, args.length), source);
+				if (conds == null) {
+					return;
+				}
+				ArrayList<Month> matches = new ArrayList<Month>();
+				for (Pair<Month, ArrayList<Pair<String, Long>>> match
+						 : Condition.filter(conds, source)) {
+					matches.add(match.getLeft());
+				}
+				budget.shareMonths(matches);
+			}
+		}
+		_budgets.put(name, budget);
+		_caches.put(name, new ResultCache());
+		int size = budget.getMonths().size();
+		_output.printf("created budget %s with %d month%s%n", name, size,
+					   size == 1 ? "" : "s");
+    }
+
+    /** Performs a remove command by removing a Month from the budget, an
+     *  Item from one of its Months, or a whole budget other than the
+     *  current one. */
     private void removeCommand(String[] args) {
+		if (args.length == 3 && args[1].equals("budget")) {
+			removeBudgetCommand(args[2]);
+			return;
+		}
+		if (args.length > 2 && args[1].equals("item")) {
+			removeItemCommand(args);
+			return;
+		}
 		if (args.length != 2) {
-	    	_output.println("ERROR: invalid remove command");
+	    	error("invalid remove command%n");
 	    	return;
 		}
-		if (!_monthNames.contains(args[1])) {
-	    	_output.printf("ERROR: %s is not a loaded month%n", args[1]);
+		if (!_budget.containsMonth(args[1])) {
+	    	error("%s is not a loaded month%n", args[1]);
 	    	return;
 		}
-		_budget.removeMonth(_budget.getMonth(args[1]));
-		_monthNames.remove(args[1]);
+		Month month = _budget.getMonth(args[1]);
+		_budget.removeMonth(month);
+		_cache.invalidate(month);
         _output.printf("removed %s from budget%n", args[1]);
     }
 
+    /** Removes my budget named NAME, which may not be the current one. Its
+     *  Months stay in any other budgets sharing them. */
+    private void removeBudgetCommand(String name) {
+		if (!_budgets.containsKey(name)) {
+			error("no budget named %s%n", name);
+			return;
+		}
+		if (name.equals(_budgetName)) {
+			error("cannot remove the current budget%n");
+			return;
+		}
+		_budgets.remove(name).clear();
+		_caches.remove(name);
+		_output.printf("removed budget %s%n", name);
+    }
+
+    /** Reads and executes an add command, which adds an Item to a Month
+     *  of the current budget or a new, empty Month to it. */
+    private void addCommand(String[] args) {
+		if (args.length > 1 && args[1].equals("item")) {
+			addItemCommand(args);
+		} else if (args.length > 1 && args[1].equals("month")) {
+			addMonthCommand(args);
+		} else {
+			error("invalid add command%n");
+		}
+    }
+
+    /** Reads and executes an add item command, which adds an Item to a
+     *  Month of the current budget and appends it to the Month's .bgi
+     *  file, if the Month has one in this budget. The Month is replaced
+     *  by a copy with the Item that shares all but the Item's category
+     *  with it, and the budget's totals are moved from one to the other
+     *  rather than added up again. */
+    private void addItemCommand(String[] args) {
+		if (args.length != 7) {
+			error("invalid add command%n");
+			return;
+		}
+		Month month = itemMonth(args[2], args[3]);
+		Integer date = month == null ? null : parseDay(args[4]);
+		Long amount = date == null ? null : parseAmount(args[6]);
+		if (amount == null) {
+			return;
+		}
+		if (date < 1 || date > month.getDays()) {
+			error("%s is not a day of %s%n", args[4], args[2]);
+			return;
+		}
+		Month fresh = _budget.addItem(month, args[3], args[5], date, amount);
+		String file = fresh.getFile();
+		if (file != null) {
+			try {
+				appendItem(file, args[3], date, args[5], amount);
+			} catch (IOException e) {
+				_budget.replaceMonth(fresh, month);
+				error("trouble writing to %s%n", file);
+				return;
+			}
+		}
+		_cache.invalidate(month);
+		_output.printf("added %s to %s%n", args[5], month.getName());
+    }
+
+    /** Reads and executes a remove item command, which removes the first
+     *  Item of a Month of the current budget with the category, day, name
+     *  and amount given, and also removes its line from the Month's .bgi
+     *  file, if the Month has one in this budget. */
+    private void removeItemCommand(String[] args) {
+		if (args.length != 7) {
+			error("invalid remove command%n");
+			return;
+		}
+		Month month = itemMonth(args[2], args[3]);
+		Integer date = month == null ? null : parseDay(args[4]);
+		Long amount = date == null ? null : parseAmount(args[6]);
+		if (amount == null) {
+			return;
+		}
+		int i = month.findItem(args[3], args[5], date, amount);
+		if (i < 0) {
+			error("%s has no such item%n", args[2]);
+			return;
+		}
+		Month fresh = _budget.removeItem(month, args[3], i);
+		String file = fresh.getFile();
+		if (file != null) {
+			try {
+				removeItemLine(file, args[3], date, args[5], amount);
+			} catch (IOException e) {
+				_budget.replaceMonth(fresh, month);
+				error("trouble writing to %s%n", file);
+				return;
+			}
+		}
+		_cache.invalidate(month);
+		_output.printf("removed %s from %s%n", args[5], month.getName());
+    }
+
+    /** Reads and executes an add month command, which adds a new Month
+     *  with no Items to the current budget and writes it as a new .bgi
+     *  file, named after it, in the working directory. */
+    private void addMonthCommand(String[] args) {
+		if (args.length < 5) {
+			error("invalid add command%n");
+			return;
+		}
+		int days;
+		try {
+			days = Integer.parseInt(args[3]);
+		} catch (NumberFormatException e) {
+			days = 0;
+		}
+		if (days <= 0) {
+			error("%s is an invalid number of days%n", args[3]);
+			return;
+		}
+		Month month = new Month(args[2], days);
+		List<String> cats = commaList(args, 4, args.length);
+		if (cats == null) {
+			error("invalid add command%n");
+			return;
+		}
+		for (String cat : cats) {
+			if (month.containsCat(cat)) {
+				error("category %s is listed twice%n", cat);
+				return;
+			}
+			month.addCat(cat);
+		}
+		String file = args[2] + ".bgi";
+		if (new File(file).exists()) {
+			error("file %s already exists%n", file);
+			return;
+		}
+		try {
+			writeText(String.format("%d %s %d\n%s\n",
+									_budget.getMonths().size() + 1, args[2],
+									days, String.join(", ", cats)),
+					  file);
+		} catch (IOException e) {
+			error("trouble writing to %s%n", file);
+			return;
+		}
+		month.setFile(Paths.get(file).toAbsolutePath().normalize().toString());
+		if (!addMonth(_budget, month)) {
+			new File(file).delete();
+			return;
+		}
+		_cache.invalidate(month);
+		_output.printf("added %s as %s%n", args[2], file);
+    }
+
+    /** Returns the Month of the current budget named NAME, after checking
+     *  that it has a category CAT, or prints an error and returns null. */
+    private Month itemMonth(String name, String cat) {
+		Month month = _budget.getMonth(name);
+		if (month == null) {
+			error("%s is not a loaded month%n", name);
+			return null;
+		}
+		if (!month.containsCat(cat)) {
+			error("%s is not a category of %s%n", cat, name);
+			return null;
+		}
+		return month;
+    }
+
+    /** Appends a line for an Item of category CAT dated day DATE with name
+     *  NAME and amount AMOUNT to the .bgi file FILENAME, first ending its
+     *  last line if that has no line terminator. */
+    private static void appendItem(String fileName, String cat, int date,
+								   String name, long amount)
+		throws IOException {
+		boolean terminated;
+		try (RandomAccessFile in = new RandomAccessFile(fileName, "r")) {
+			terminated = in.length() == 0;
+			if (!terminated) {
+				in.seek(in.length() - 1);
+				terminated = in.read() == '\n';
+			}
+		}
+		try (Writer out = new BufferedWriter(new FileWriter(fileName, true))) {
+			if (!terminated) {
+				out.write('\n');
+			}
+			out.write(cat + " " + date + " " + name + " "
+					  + Money.format(amount) + "\n");
+		}
+    }
+
+    /** Rewrites the .bgi file FILENAME without its first line for an Item
+     *  of category CAT dated day DATE with name NAME and amount AMOUNT.
+     *  The new file is written to a hidden file next to it and then moved
+     *  over it, so the file is never left half written. */
+    private static void removeItemLine(String fileName, String cat, int date,
+									   String name, long amount)
+		throws IOException {
+		Path path = Paths.get(fileName).toAbsolutePath();
+		Path temp = path.resolveSibling("." + path.getFileName() + ".tmp");
+		try {
+			try (BufferedReader in = Files.newBufferedReader(path);
+				 Writer out = Files.newBufferedWriter(temp)) {
+				boolean removed = false;
+				int lineNum = 0;
+				String line;
+				while ((line = in.readLine()) != null) {
+					lineNum++;
+					if (!removed && lineNum > 2
+						&& isItemLine(line, cat, date, name, amount)) {
+						removed = true;
+						continue;
+					}
+					out.write(line);
+					out.write('\n');
+				}
+			}
+			Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING,
+					   StandardCopyOption.ATOMIC_MOVE);
+		} finally {
+			Files.deleteIfExists(temp);
+		}
+    }
+
+    /** Returns true iff LINE of a .bgi file is for an Item of category CAT
+     *  dated day DATE with name NAME and amount AMOUNT. */
+    private static boolean isItemLine(String line, String cat, int date,
+									  String name, long amount) {
+		String[] words = line.trim().split("\\s+");
+		try {
+			return words.length == 4 && words[0].equals(cat)
+				&& Integer.parseInt(words[1]) == date
+				&& words[2].equals(name) && Money.parse(words[3]) == amount;
+		} catch (NumberFormatException e) {
+			return false;
+		}
+    }
+
     /** Parses a load command to determine if it is a load all command
      *  or not. */
     private void loadCommand(String[] args) {
     	if (args.length < 2) {
-    		_output.println("ERROR: invalid load command");
+    		error("invalid load command%n");
     		return;
     	}
     	if (args[1].equals("all")) {
     		loadAllCommand(args);
     		return;
     	}
-    	loadFilesCommand(args);
+    	if (args[1].equals("budget")) {
+    		loadBudgetCommand(args);
+    		return;
+    	}
+    	loadFilesCommand(args, false, false);
+    }
+
+    /** Reads and executes a load budget command, which adds all the months
+     *  of a snapshot .bg file written by a save budget command to the
+     *  budget. If the command ends with 'lazily', only the snapshot's
+     *  index is read and the items of each month are read on first use. */
+    private void loadBudgetCommand(String[] args) {
+    	boolean lazy = args.length == 4 && args[3].equals("lazily");
+    	if (args.length != 3 && !lazy) {
+    		error("invalid load budget command%n");
+    		return;
+    	}
+    	String fileName = args[2].endsWith(".bg") ? args[2] : args[2] + ".bg";
+    	try {
+    		LinkedHashMap<String, Month> loaded =
+    			new LinkedHashMap<String, Month>();
+    		for (Month month : Snapshot.read(fileName, lazy)) {
+    			load(month, loaded);
+    		}
+    		addLoaded(loaded);
+    	} catch (FileNotFoundException | NoSuchFileException e) {
+    		error("cannot find file %s%n", fileName);
+    	} catch (IOException e) {
+    		error("file %s could not be interpreted;%n       %s%n",
+    			  fileName, e.getMessage());
+    	}
     }
 
 
     /** Reads and executes a load all command, which finds all the .bgi
-     *  files in the given folder and loads them into the budget. */
+     *  files in the given folder and loads them into the budget. If the
+     *  command ends with 'lazily', only the first two lines of each file
+     *  are read now and its items are read on first use. If it ends with
+     *  'indexed', the months are also loaded lazily, but with their
+     *  totals, which come from the .bgx summary of each file, written
+     *  now if it is missing or out of date. */
     private void loadAllCommand(String[] args) {
-    	if (args.length != 4 || !args[2].equals("from")) {
-    		_output.println("ERROR: invalid load all command");
+    	boolean indexed = args.length == 5 && args[4].equals("indexed");
+    	boolean lazy = indexed
+    		|| (args.length == 5 && args[4].equals("lazily"));
+    	if ((args.length != 4 && !lazy) || !args[2].equals("from")) {
+    		error("invalid load all command%n");
     		return;
     	}
-    	File dir = new File(args[3]);
-    	if (!dir.isDirectory()) {
-    		_output.printf("ERROR: %s is not a directory\n", args[3]);
+    	String[] bgiFileNames = bgiFiles(args[3]);
+    	if (bgiFileNames == null) {
     		return;
-   		}
-    	String[] bgiFileNames = dir.list(_bgiFileFilter);
-    	int numPotentialFiles = bgiFileNames.length;
-    	String[] loadFilesArgs = new String[numPotentialFiles + 1];
+    	}
+    	String[] loadFilesArgs = new String[bgiFileNames.length + 1];
     	loadFilesArgs[0] = "load";
-    	for (int i = 0; i < numPotentialFiles; i++) {
-    		loadFilesArgs[i + 1] = args[3].concat("/").concat(bgiFileNames[i]);
+    	System.arraycopy(bgiFileNames, 0, loadFilesArgs, 1, bgiFileNames.length);
+    	loadFilesCommand(loadFilesArgs, lazy, indexed);
+    }
+
+    /** Returns the paths of all the .bgi files in the directory DIR, or
+     *  prints an error and returns null if DIR is not a directory. */
+    private String[] bgiFiles(String dir) {
+    	File directory = new File(dir);
+    	if (!directory.isDirectory()) {
+    		error("%s is not a directory\n", dir);
+    		return null;
     	}
-    	loadFilesCommand(loadFilesArgs);
+    	String[] fileNames = directory.list(_bgiFileFilter);
+    	for (int i = 0; i < fileNames.length; i++) {
+    		fileNames[i] = dir.concat("/").concat(fileNames[i]);
+    	}
+    	return fileNames;
     }
 
 
     /** Reads and executes a load command, which reads in the .bgi files
-     *  FILENAMES[1...] and stores it as a Month in my Budget. Returns true
-     *  iff there was at least one file that failed due to an error. */
-    private void loadFilesCommand(String[] fileNames) {
-		for (int i = 1; i < fileNames.length; i++) { 
+     *  FILENAMES[1...] and stores it as a Month in my Budget. The files
+     *  are parsed concurrently by _loadPool, but the results are added to
+     *  the budget and reported in the order the files were given. If LAZY,
+     *  the Months are loaded lazily, and if INDEXED as well, from and
+     *  with .bgx summaries. */
+    private void loadFilesCommand(String[] fileNames, boolean lazy,
+								  boolean indexed) {
+		LinkedHashMap<String, Month> loaded = new LinkedHashMap<String, Month>();
+		parseFiles(Arrays.copyOfRange(fileNames, 1, fileNames.length),
+				   bgiParser(lazy, indexed), month -> load(month, loaded));
+		addLoaded(loaded);
+    }
+
+    /** Returns a FileParser reading .bgi files as processFile does with
+     *  LAZY and INDEXED, into Months that remember the file. */
+    private FileParser bgiParser(boolean lazy, boolean indexed) {
+		return fileName -> {
+			Month month = processFile(fileName, lazy, indexed);
+			month.setFile(fileName);
+			return month;
+		};
+    }
+
+    /** Reads and executes a watch command, which loads the .bgi files of
+     *  a directory that are not loaded yet, as a load all command would,
+     *  and then keeps the current budget up to date with the directory in
+     *  the background: only the files that are created or changed are
+     *  read again, and the Months of files that are deleted are dropped. */
+    private void watchCommand(String[] args) {
+		boolean indexed = args.length == 3 && args[2].equals("indexed");
+		boolean lazy = indexed
+			|| (args.length == 3 && args[2].equals("lazily"));
+		if (args.length != 2 && !lazy) {
+			error("invalid watch command%n");
+			return;
+		}
+		String[] fileNames = bgiFiles(args[1]);
+		if (fileNames == null) {
+			return;
+		}
+		Path dir = Paths.get(args[1]).toAbsolutePath().normalize();
+		if (_watchers.containsKey(dir)) {
+			error("already watching %s%n", args[1]);
+			return;
+		}
+		Budget budget = _budget;
+		ResultCache cache = _cache;
+		FileParser parser = bgiParser(lazy, indexed);
+		Watcher watcher;
+		try {
+			watcher = new Watcher(dir, _bgiFileFilter, changed ->
+				reloadFiles(changed, dir, parser, budget, cache));
+		} catch (IOException e) {
+			error("cannot watch %s%n", args[1]);
+			return;
+		}
+		ArrayList<String> unloaded = new ArrayList<String>();
+		for (String fileName : fileNames) {
+			if (monthOfFile(budget, Paths.get(fileName)) == null) {
+				unloaded.add(fileName);
+			}
+		}
+		LinkedHashMap<String, Month> loaded = new LinkedHashMap<String, Month>();
+		parseFiles(unloaded.toArray(new String[0]), parser,
+				   month -> load(month, loaded));
+		addLoaded(loaded);
+		watcher.start();
+		_watchers.put(dir, watcher);
+		_output.printf("watching %s%n", args[1]);
+    }
+
+    /** Reads and executes an unwatch command, which stops keeping the
+     *  budget up to date with a watched directory. Its Months stay. */
+    private void unwatchCommand(String[] args) {
+		if (args.length != 2) {
+			error("invalid unwatch command%n");
+			return;
+		}
+		Watcher watcher =
+			_watchers.remove(Paths.get(args[1]).toAbsolutePath().normalize());
+		if (watcher == null) {
+			error("not watching %s%n", args[1]);
+			return;
+		}
+		watcher.stop();
+		_output.printf("stopped watching %s%n", args[1]);
+    }
+
+    /** Brings the Months of BUDGET read from .bgi files in the directory
+     *  DIR up to date after the files CHANGED in it were created, changed
+     *  or deleted, reading files with PARSER and dropping results from
+     *  CACHE. Called by a Watcher. The files are read without my lock
+     *  held, and it is only taken to swap each Month in, so statements
+     *  wait for no file and never see a Month half swapped. */
+    private void reloadFiles(Set<Path> changed, Path dir, FileParser parser,
+							 Budget budget, ResultCache cache) {
+		ArrayList<String> fileNames = new ArrayList<String>();
+		for (Path file : changed) {
+			if (Files.exists(file)) {
+				fileNames.add(file.toString());
+			}
+		}
+		try {
+			synchronized (this) {
+				dropDeleted(dir, budget, cache);
+			}
+			parseFiles(fileNames.toArray(new String[0]), parser, month -> {
+				synchronized (this) {
+					swapMonth(budget, cache, month);
+				}
+			});
+		} catch (RuntimeException e) {
+			error("%s%n", describe(e));
+		}
+		_output.flush();
+    }
+
+    /** Drops from BUDGET, and from CACHE, the Months read from .bgi files
+     *  in the directory DIR that no longer exist. */
+    private void dropDeleted(Path dir, Budget budget, ResultCache cache) {
+		for (Month month : new ArrayList<Month>(budget.getMonths())) {
+			Path file = pathOf(month);
+			if (file != null && file.getParent().equals(dir)
+				&& !Files.exists(file)) {
+				budget.removeMonth(month);
+				cache.invalidate(month);
+				_output.printf("dropped %s%n", month.getName());
+			}
+		}
+    }
+
+    /** Puts FRESH, just read from its .bgi file, into BUDGET in place of
+     *  the Month read from the same file before, if there is one, and
+     *  drops the results depending on either from CACHE. The swap is
+     *  published as one change, so readers never see BUDGET without
+     *  either Month. The old Month keeps its place among the Months of
+     *  BUDGET unless its name or categories changed. An error is printed
+     *  instead if FRESH has the name of another Month of BUDGET or no
+     *  'Income' category. */
+    private void swapMonth(Budget budget, ResultCache cache, Month fresh) {
+		Month old = monthOfFile(budget, pathOf(fresh));
+		String name = fresh.getName();
+		Month named = budget.getMonth(name);
+		if (named != null && named != old) {
+			error("budget already contains month %s%n", name);
+			return;
+		}
+		if (!fresh.containsCat("Income")) {
+			error("month %s has no 'Income' category%n", name);
+			return;
+		}
+		if (old == null) {
+			budget.addMonth(fresh);
+			_output.printf("loaded %s%n", name);
+		} else {
+			budget.replaceMonth(old, fresh);
+			cache.invalidate(old);
+			_output.printf("reloaded %s%n", name);
+		}
+		cache.invalidate(fresh);
+    }
+
+    /** Returns the Month of BUDGET read from the .bgi file FILE, or null
+     *  if there is none. */
+    private static Month monthOfFile(Budget budget, Path file) {
+		file = file.toAbsolutePath().normalize();
+		for (Month month : budget.getMonths()) {
+			if (file.equals(pathOf(month))) {
+				return month;
+			}
+		}
+		return null;
+    }
+
+    /** Returns the absolute path of the .bgi file that MONTH was read from,
+     *  or null if it was not read from one. */
+    private static Path pathOf(Month month) {
+		String file = month.getFile();
+		return file == null ? null : Paths.get(file).toAbsolutePath().normalize();
+    }
+
+    /** Parses the .bgi files FILENAMES concurrently on _loadPool with
+     *  PARSER and passes the resulting Months to SINK in the order the
+     *  files were given. An error is printed instead for each file that
+     *  cannot be read or parsed. */
+    private void parseFiles(String[] fileNames, FileParser parser,
+							Consumer<Month> sink) {
+		ArrayList<Future<Month>> parsed = new ArrayList<Future<Month>>();
+		for (String fileName : fileNames) {
+			parsed.add(_loadPool.submit(() -> parser.parse(fileName)));
+		}
+		for (int i = 0; i < fileNames.length; i++) {
 	    	try {
-				Scanner in = new Scanner(new FileReader(fileNames[i]));
-				Month month = processFile(in);
-				if (month == null) {
-		    		continue;
+				sink.accept(parsed.get(i).get());
+	    	} catch (InterruptedException e) {
+				error("loading %s was interrupted%n", fileNames[i]);
+	    	} catch (ExecutionException e) {
+				Throwable cause = e.getCause();
+				if (cause instanceof FileNotFoundException) {
+					error("cannot find file %s%n", fileNames[i]);
+				} else if (cause instanceof IOException) {
+					error("trouble reading file %s%n", fileNames[i]);
+				} else if (cause instanceof RuntimeException) {
+					error("file %s could not be interpreted;%n       %s",
+						  fileNames[i], cause.getMessage());
+				} else {
+					throw new Error(cause);
 				}
-				_budget.addMonth(month);
-				_output.printf("loaded %s%n", month.getName());
-	    	} catch (FileNotFoundException e) {
-				_output.printf("ERROR: cannot find file %s%n", fileNames[i]);
-	    	} catch (RuntimeException e) {
-				_output.printf("ERROR: file %s could not be interpreted;%n       %s",
-			       		   		fileNames[i], e.getMessage());
 	    	}
 		}
     }
 
-    /** Reads the file IN and returns all the data as a Month object
-     *  if _budget doesn't already contain a Month with this file's
-     *  month name, or null otherwise. Also returns null if the file
-     *  IN does not include an 'Income' category. */
-    private Month processFile(Scanner in) {
-		int lineNum = 1;
-		int monthNum;
-		String monthName;
-		Month month;
-		boolean containsIncome = false;
-		try {
-			monthNum = in.nextInt();
-	    	monthName = in.next();
-	    	if (_monthNames.contains(monthName)) {
-				_output.printf(
-					"ERROR: budget already contains month %s%n",
-			    	monthName
-			    );
-				return null;
-	    	}
-	    	month = new Month(monthName, in.nextInt());
-	    	in.nextLine();
-	    	lineNum++;
-	    	String[] cats = in.nextLine().split(", ");
-	    	for (String cat : cats) {
-				if (cat.equals("Income")) {
-		    		containsIncome = true;
-				}
+    /** Adds MONTH to LOADED, the Months just loaded by name, and prints
+     *  that it was loaded, unless it could not be added to _budget along
+     *  with them, as by addMonth. The Months are only added to _budget
+     *  once all are loaded, by addLoaded, so that readers of _budget see
+     *  all of them or none. */
+    private void load(Month month, LinkedHashMap<String, Month> loaded) {
+		if (canAdd(_budget, month, loaded.keySet())) {
+			loaded.put(month.getName(), month);
+			_output.printf("loaded %s%n", month.getName());
+		}
+    }
+
+    /** Adds the Months LOADED, collected by load, to _budget at once. */
+    private void addLoaded(LinkedHashMap<String, Month> loaded) {
+		_budget.addMonths(loaded.values());
+		for (Month month : loaded.values()) {
+			_cache.invalidate(month);
+		}
+    }
+
+    /** Adds MONTH to BUDGET and returns true, unless BUDGET already
+     *  contains a Month with the same name or MONTH does not include an
+     *  'Income' category, in which case an error is printed and false is
+     *  returned. */
+    private boolean addMonth(Budget budget, Month month) {
+		if (!canAdd(budget, month, Collections.emptySet())) {
+			return false;
+		}
+		budget.addMonth(month);
+		return true;
+    }
+
+    /** Returns true iff MONTH can be added to BUDGET along with Months
+     *  named ADDING, that is unless BUDGET already contains a Month with
+     *  the same name or ADDING has its name, or MONTH does not include an
+     *  'Income' category, in which case an error is printed. */
+    private boolean canAdd(Budget budget, Month month, Set<String> adding) {
+		String monthName = month.getName();
+		if (budget.containsMonth(monthName) || adding.contains(monthName)) {
+			error("budget already contains month %s%n", monthName);
+			return false;
+		}
+		if (!month.containsCat("Income")) {
+			error("month %s has no 'Income' category%n", monthName);
+			return false;
+		}
+		return true;
+    }
+
+    /** Reads the .bgi file FILENAME and returns all of its data as a Month
+     *  object. If LAZY, the Month reads its items from the file on first
+     *  use: its totals come from the file's .bgx summary if that is up to
+     *  date, and otherwise only the first two lines are read, unless
+     *  INDEXED, in which case the whole file is read to write a new
+     *  summary, and only its totals are kept. Throws a RuntimeException
+     *  naming the offending line if the file is not formatted correctly.
+     *  This only reads my state, so it may be called from any thread. */
+    Month processFile(String fileName, boolean lazy,
+					  boolean indexed) throws IOException {
+		if (lazy) {
+			Month summary = Summary.read(fileName);
+			if (summary != null) {
+				return summary;
+			}
+		}
+		long start = Stats.start();
+		File file = new File(fileName);
+		long modified = file.lastModified();
+		long size = file.length();
+		try (BGIReader in = new BGIReader(fileName)) {
+			in.readHeader();
+			String[] cats = in.readCats();
+			long offset = in.getOffset();
+			int lineNum = in.getLineNum();
+			Month month;
+			if (lazy && !indexed) {
+				month = new Month(in.getName(), in.getDays(),
+					new BGIReader.ItemSource(fileName, offset, lineNum,
+											 modified, size));
+			} else {
+				month = new Month(in.getName(), in.getDays());
+			}
+			for (String cat : cats) {
 				month.addCat(cat);
-	    	}
-	    	if (!containsIncome) {
-				_output.printf(
-					"ERROR: month %s has no 'Income' category%n",
-					monthName
-				);
-				return null;
-	    	}
-			while (in.hasNextLine()) {
-				lineNum++;
-				if (!in.hasNext()) {
-					break;
+			}
+			if (lazy && !indexed) {
+				return month;
+			}
+			int items = 0;
+			while (in.nextItem()) {
+				month.addItem(in.getCat(), in.getItemName(), in.getDate(),
+							  in.getAmount());
+				items++;
+			}
+			Stats.parsed(size, items, start);
+			if (!indexed) {
+				return month;
+			}
+			try {
+				Summary.write(fileName, modified, size, month, offset, lineNum);
+			} catch (IOException e) {
+				/* The summary is only an optimization, so a directory that
+				   cannot be written to just means no summary. */
+			}
+			return Summary.of(fileName, month, offset, lineNum, modified,
+							  size);
+		}
+    }
+
+    /** Reads the .bgi file FILENAME and returns a Month holding only the
+     *  number and total of the items in each of its categories. Each item
+     *  is added to the totals of its category as soon as it is read and
+     *  is then dropped, so no more memory is used for a big file than for
+     *  a small one. Throws a RuntimeException naming the offending line
+     *  if the file is not formatted correctly. */
+    private Month processTotals(String fileName) throws IOException {
+		long start = Stats.start();
+		try (BGIReader in = new BGIReader(fileName)) {
+			in.readHeader();
+			String[] cats = in.readCats();
+			int[] sizes = new int[cats.length];
+			long[] totals = new long[cats.length];
+			int items = 0;
+			while (in.nextItem()) {
+				sizes[in.getCatIndex()]++;
+				totals[in.getCatIndex()] += in.getAmount();
+				items++;
+			}
+			Stats.parsed(new File(fileName).length(), items, start);
+			Month month = new Month(in.getName(), in.getDays());
+			for (int c = 0; c < cats.length; c++) {
+				if (!month.containsCat(cats[c])) {
+					month.addCat(new Category(cats[c], sizes[c], totals[c]));
 				}
-	    		String cat = in.next();
-	    		int date = in.nextInt();
-	    		String name = in.next();
-	    		double amount = in.nextDouble();
-	    		month.addItem(cat, name, date, amount);
-			}
-		} catch (Exception e) {
-	    	String eMessage = String.format(
-	    		"line number %d has incorrect formatting%n",
-				lineNum
-			);
-	    	throw new RuntimeException(eMessage);
-		}
-		_monthNames.add(monthName);
-		return month;
+			}
+			return month;
+		}
     }
 
     /** Reads and executes a print command. */
     private void printCommand(String[] args) {
+		if (args.length == 3 && args[1].equals("cache")
+			&& args[2].equals("stats")) {
+			printCacheStats();
+			return;
+		}
+		if (args.length == 2 && args[1].equals("stats")) {
+			_output.print(Stats.summary());
+			return;
+		}
+		if (args.length == 2 && args[1].equals("budgets")) {
+			printBudgets();
+			return;
+		}
 		if (args.length != 2) {
-	    	_output.println("ERROR: invalid print command");
+	    	error("invalid print command%n");
 	    	return;
 		}
 		switch (args[1]) {
 			case "months":
-	    		if (_monthNames.size() == 0) {
+	    		if (_view.getMonths().isEmpty()) {
 					_output.println("currently no loaded months");
 	    		} else {
-					for (Month month : _budget.getMonths()) {
+					for (Month month : _view.getMonths()) {
 		    			_output.println(month.getName());
 					}
 	    		}
 	    		return;
 			case "categories":
-	    		if (_monthNames.size() == 0) {
+	    		if (_view.getMonths().isEmpty()) {
 					_output.println("currently no loaded months");
 	    		} else {
-					collectCats();
-					for (String cat : _cats) {
+					for (String cat : _view.getCats()) {
 		    			_output.println(cat);
 					}
 	    		}
 	    		return;
 			default:
-	    		_output.println("ERROR: invalid print command");
+	    		error("invalid print command%n");
 	    		return;
 		}
     }
 
+    /** Prints the names of my budgets and their numbers of months, with
+     *  the current budget marked by a '*'. */
+    private void printBudgets() {
+		for (String name : _budgets.keySet()) {
+			int size = _budgets.get(name).getMonths().size();
+			_output.printf("%s %s (%d month%s)%n",
+						   name.equals(_budgetName) ? "*" : " ", name, size,
+						   size == 1 ? "" : "s");
+		}
+    }
+
+    /** Prints the hits and misses of _cache and the number of results
+     *  it holds. */
+    private void printCacheStats() {
+		_output.printf("cache hits: %d%n", _cache.getHits());
+		_output.printf("cache misses: %d%n", _cache.getMisses());
+		_output.printf("cached results: %d%n", _cache.size());
+    }
+
+    /** Returns the text of the report or query KEY from _cache, or if it
+     *  is not there, builds it in _report with REPORT and caches it as a
+     *  result depending on the month MONTH, the category CAT or, if both
+     *  are null, every month. */
+    private String cached(String key, String month, String cat,
+						  Consumer<ReportBuilder> report) {
+		String text = _cache.get(key);
+		if (text == null) {
+			long start = Stats.start();
+			_report.clear();
+			report.accept(_report);
+			text = _report.toString();
+			Stats.rendered(text.length(), start);
+			_cache.put(key, month, cat, text);
+		}
+		return text;
+    }
+
+    /** Returns the text of the report on the whole budget. */
+    private String budgetReport() {
+		return cached("report budget", null, null,
+					  out -> reportBudget(_view, out));
+    }
+
+    /** Returns the text of the report on the month MONTH. */
+    private String monthReport(String month) {
+		return cached("report month " + month, month, null,
+					  out -> reportMonth(month, out));
+    }
+
+    /** Returns the text of the report on the category CAT. */
+    private String catReport(String cat) {
+		return cached("report category " + cat, null, cat,
+					  out -> reportCat(_view, cat, out));
+    }
+
+    /** Returns the text of the day by day report on the category CAT. */
+    private String catByDayReport(String cat) {
+		return cached("report category " + cat + " by day", null, cat,
+					  out -> reportCatByDay(_view, cat, out));
+    }
+
+    /** Returns the text of the report on Income. */
+    private String incomeReport() {
+		return cached("report income", null, "Income",
+					  out -> reportIncome(_view, out));
+    }
+
     /** Reads and executes a report command. */
     private void reportCommand(String[] coms) {
+		if (coms.length == 4 && coms[2].equals("from")) {
+			reportFromCommand(coms);
+			return;
+		}
+		if (coms.length == 4 && coms[2].equals("by") && coms[3].equals("day")
+			&& _view.containsCat(coms[1])) {
+			_output.print(catByDayReport(coms[1]));
+			return;
+		}
 		if (coms.length != 2) {
-		    _output.println("ERROR: invalid report command");
+		    error("invalid report command%n");
 		    return;
 		}
 		if (coms[1].equals("budget")) {
-		    reportBudget(_output);
+		    _output.print(budgetReport());
 		    return;
-		} else if (_monthNames.contains(coms[1])) {
-		    reportMonth(coms[1], _output);
+		} else if (_view.containsMonth(coms[1])) {
+		    _output.print(monthReport(coms[1]));
 		    return;
 		}
-		collectCats();
-		if (_cats.contains(coms[1])) {
-		    reportCat(coms[1], _output);
+		if (_view.containsCat(coms[1])) {
+		    _output.print(catReport(coms[1]));
 		    return;
 		}
-		_output.println("ERROR: invalid report command");
+		error("invalid report command%n");
 		return;
     }
 
-    /** Reports on the entire budget, outputting to OUTPUT. */
-    private void reportBudget(PrintStream output) {
-		output.println();
-		double res = _budget.getTotal();
+    /** Reads and executes a report from command, which reports on the
+     *  budget or a category of the .bgi files in a directory without
+     *  loading them. Each file is streamed through processTotals, so only
+     *  the totals of its categories are ever held, and my own budget is
+     *  left alone. */
+    private void reportFromCommand(String[] coms) {
+		String[] fileNames = bgiFiles(coms[3]);
+		if (fileNames == null) {
+			return;
+		}
+		Budget budget = new Budget();
+		parseFiles(fileNames, this::processTotals,
+				   month -> addMonth(budget, month));
+		long start = Stats.start();
+		_report.clear();
+		if (coms[1].equals("budget")) {
+			reportBudget(budget, _report);
+		} else if (budget.containsCat(coms[1])) {
+			reportCat(budget, coms[1], _report);
+		} else {
+			error("invalid report command%n");
+			return;
+		}
+		String text = _report.toString();
+		Stats.rendered(text.length(), start);
+		_output.print(text);
+    }
+
+    /** Reports on the entire budget BUDGET, outputting to OUT. */
+    void reportBudget(Budget budget, ReportBuilder out) {
+		out.line();
+		long res = budget.getTotal();
 		if (res < 0) {
-		    output.printf("  Your budget total is: -$%.2f%n", -res);
+			out.text("  Your budget total is: -$").money(-res).line();
 		} else {
-		    output.printf("  Your budget total is: $%.2f%n", res);
+			out.text("  Your budget total is: $").money(res).line();
 		}
-		double totInc = _budget.getTotal("Income");
-		output.printf("  Your total income is: $%.2f%n", totInc);
-		double expend = res - totInc;
+		long totInc = budget.getTotal("Income");
+		out.text("  Your total income is: $").money(totInc).line();
+		long expend = res - totInc;
 		if (expend < 0) {
-		    output.printf("  Your total expenditures amounted to: $%.2f%n", -expend);
+			out.text("  Your total expenditures amounted to: $").money(-expend)
+				.line();
 		} else {
-		    output.printf("  Your total expenditures amounted to: $%.2f%n", expend);
-		}
-		reportMonthlyTotals(output);
-		output.println();
-		for (Month month : _budget.getMonths()) {
-		    double dailyLoss = month.getLosses() / month.getDays();
-		    double inc = month.getTotal("Income");
-		    double dailyInc = inc / month.getDays();
-		    double dailyTot = dailyInc - dailyLoss;
-		    output.printf("   -Each day in %s you spent $%.2f ", month.getName(), dailyLoss);
-		    output.printf("and earned $%.2f,%n", dailyInc);
-	    	if (dailyTot < 0) {
-				output.printf(
-					"    which is a daily net total of -$%.2f.%n",
-					-dailyTot
-				);
-	    	} else {
-				output.printf(
-					"    which is a daily net total of $%.2f.%n",
-					dailyTot
-				);
-	    	}
-	    	if (inc > 0) {
-				for (String cat : month.getCats()) {
-			    	if (!cat.equals("Income")) {
-						double tot = month.getTotal(cat);
-						if (tot < 0) {
-				    		double perc = -100 * tot / inc;
-				    		output.printf("      %.0f", perc);
-				    		output.print("% of your income was spent on ");
-				    		output.printf("%s.%n", cat);
-						}
-		    		}
-				}
-				if (month.getTotal() > 0) {
-		    		double extra = 100 * month.getTotal() / inc;
-		    		output.printf("      %.0f", extra);
-		    		output.println("% of your income was unused.");
-				}
-	    	}
-	    	output.println();
-		}
-    }
-
-    /** Outputs the names of all the Months in _budget with their
-     *  respective totals and 'Income' totals to OUTPUT. */
-    private void reportMonthlyTotals(PrintStream output) {
-		if (_budget.getMonths().size() > 0) {
-	    	output.println();
-	    	for (Month month : _budget.getMonths()) {
-				String name = month.getName();
-				double total = month.getTotal();
-				double income = month.getTotal("Income");
-				double expend = total - income;
-				if (total < 0) {
-		    		output.printf("  %s total: -$%.2f%n", name, -total);
-				} else {
-		    		output.printf("  %s total: $%.2f%n", name, total);
-				}
-				output.printf("   *Income: $%.2f%n", income);
-				if (expend < 0) {
-		    		output.printf("   *Expenditures: $%.2f%n%n", -expend);
-				} else {
-		    		output.printf("   *Expenditures: $%.2f%n%n", expend);
+			out.text("  Your total expenditures amounted to: $").money(expend)
+				.line();
+		}
+		if (budget.getMonths().size() > 0) {
+			out.line();
+			sections(budget.getMonths(), out, this::reportMonthTotals);
+		}
+		out.line();
+		sections(budget.getMonths(), out, this::reportDailyTotals);
+    }
+
+    /** Outputs the section of each Month of MONTHS written by SECTION to
+     *  OUT, in order. If there are enough Months, the sections are built
+     *  in parallel, each in a ReportBuilder of its own. */
+    private static void sections(List<Month> months, ReportBuilder out,
+								 BiConsumer<Month, ReportBuilder> section) {
+		if (!Parallel.worthIt(months.size())) {
+			for (Month month : months) {
+				section.accept(month, out);
+			}
+			return;
+		}
+		List<ReportBuilder> built = Parallel.map(months, month -> {
+				ReportBuilder text = new ReportBuilder();
+				section.accept(month, text);
+				return text;
+			});
+		for (ReportBuilder text : built) {
+			out.append(text);
+		}
+    }
+
+    /** Outputs the name of MONTH with its total and 'Income' total to
+     *  OUT. */
+    private void reportMonthTotals(Month month, ReportBuilder out) {
+		String name = month.getName();
+		long total = month.getTotal();
+		long income = month.getTotal("Income");
+		long expend = total - income;
+		if (total < 0) {
+			out.text("  ").text(name).text(" total: -$").money(-total).line();
+		} else {
+			out.text("  ").text(name).text(" total: $").money(total).line();
+		}
+		out.text("   *Income: $").money(income).line();
+		if (expend < 0) {
+			out.text("   *Expenditures: $").money(-expend).line().line();
+		} else {
+			out.text("   *Expenditures: $").money(expend).line().line();
+		}
+    }
+
+    /** Outputs the daily spending and earnings of MONTH, and the share of
+     *  its income spent on each category, to OUT. */
+    private void reportDailyTotals(Month month, ReportBuilder out) {
+		double dailyLoss = Money.toDollars(month.getLosses()) / month.getDays();
+		long inc = month.getTotal("Income");
+		double dailyInc = Money.toDollars(inc) / month.getDays();
+		double dailyTot = dailyInc - dailyLoss;
+		out.text("   -Each day in ").text(month.getName())
+			.text(" you spent $").fixed(dailyLoss, 2)
+			.text(" and earned $").fixed(dailyInc, 2).line(",");
+		if (dailyTot < 0) {
+			out.text("    which is a daily net total of -$")
+				.fixed(-dailyTot, 2).line(".");
+		} else {
+			out.text("    which is a daily net total of $")
+				.fixed(dailyTot, 2).line(".");
+		}
+		if (inc > 0) {
+			for (String cat : month.getCats()) {
+				if (!cat.equals("Income")) {
+					long tot = month.getTotal(cat);
+					if (tot < 0) {
+						out.text("      ").fixed(-100.0 * tot / inc, 0)
+							.text("% of your income was spent on ")
+							.text(cat).line(".");
+					}
 				}
-	    	}
+			}
+			if (month.getTotal() > 0) {
+				out.text("      ").fixed(100.0 * month.getTotal() / inc, 0)
+					.line("% of your income was unused.");
+			}
 		}
+		out.line();
     }
 
 
-    /** Reports only on Month MONTH, which must be included in _budget.
-     *  Output goes to OUTPUT. */
-    private void reportMonth(String month, PrintStream output) {
-        output.println();
-		Month m  = _budget.getMonth(month);
-		double tot = m.getTotal();
+    /** Reports only on Month MONTH, which must be included in _view.
+     *  Output goes to OUT. */
+    private void reportMonth(String month, ReportBuilder out) {
+		out.line();
+		Month m  = _view.getMonth(month);
+		long tot = m.getTotal();
 		if (tot < 0) {
-	    	output.printf("  Your total for %s is: -$%.2f%n", month, -tot);
+			out.text("  Your total for ").text(month).text(" is: -$")
+				.money(-tot).line();
 		} else {
-	    	output.printf("  Your total for %s is: $%.2f%n", month, tot);
+			out.text("  Your total for ").text(month).text(" is: $")
+				.money(tot).line();
 		}
-		double inc = m.getTotal("Income");
-		output.printf("  Your total income for %s is: $%.2f%n", month, inc);
-		double expend = tot - inc;
+		long inc = m.getTotal("Income");
+		out.text("  Your total income for ").text(month).text(" is: $")
+			.money(inc).line();
+		long expend = tot - inc;
 		if (expend < 0) {
-	    	output.printf("  Your total expenditures for %s amounted to: $%.2f%n%n", month, -expend);
+			out.text("  Your total expenditures for ").text(month)
+				.text(" amounted to: $").money(-expend).line().line();
 		} else {
-	    	output.printf("  Your total expenditures for %s amounted to: $%.2f%n%n", month, expend);
+			out.text("  Your total expenditures for ").text(month)
+				.text(" amounted to: $").money(expend).line().line();
 		}
 		for (String cat : m.getCats()) {
-	    	if (cat.equals("Income")) {
+			if (cat.equals("Income")) {
 				continue;
-	    	}
-	    	double amount = -m.getTotal(cat);
-	    	if (amount == 0) {
+			}
+			long amount = -m.getTotal(cat);
+			if (amount == 0) {
 				continue;
-	    	}
-	    	double perc = 100 * amount / inc;
-	    	if (inc == 0) {
-				output.printf("   -You spent $%.2f on %s.%n", amount, cat);
-	    	} else {
-				output.printf("   -You spent $%.2f on %s, which is %.0f", amount, cat, perc);
-				output.println("% of your income.");
-	    	}
+			}
+			out.text("   -You spent $").money(amount).text(" on ").text(cat);
+			if (inc == 0) {
+				out.line(".");
+			} else {
+				out.text(", which is ").fixed(100.0 * amount / inc, 0)
+					.line("% of your income.");
+			}
 		}
-		output.println();
-		double dailyLoss = m.getLosses() / m.getDays();
-		double dailyInc = inc / m.getDays();
+		out.line();
+		double dailyLoss = Money.toDollars(m.getLosses()) / m.getDays();
+		double dailyInc = Money.toDollars(inc) / m.getDays();
 		double dailyTot = dailyInc - dailyLoss;
-		output.printf("   -Each day in %s you spent $%.2f ", month, dailyLoss);
-		output.printf("and earned $%.2f,%n", dailyInc);
+		out.text("   -Each day in ").text(month).text(" you spent $")
+			.fixed(dailyLoss, 2).text(" and earned $").fixed(dailyInc, 2)
+			.line(",");
 		if (dailyTot < 0) {
-	    	output.printf("    which is a daily net total of -$%.2f.%n", -dailyTot);
+			out.text("    which is a daily net total of -$").fixed(-dailyTot, 2)
+				.line(".");
 		} else {
-	    	output.printf("    which is a daily net total of $%.2f.%n", dailyTot);
+			out.text("    which is a daily net total of $").fixed(dailyTot, 2)
+				.line(".");
 		}
-		output.println();
+		out.line();
     }
 
-    /** Reports only on category CAT, which must be included in _cats.
-     *  Output goes to OUTPUT. */
-    private void reportCat(String cat, PrintStream output) {
+    /** Reports only on category CAT of BUDGET, which must be one of its
+     *  categories. Output goes to OUT. */
+    void reportCat(Budget budget, String cat, ReportBuilder out) {
 		if (cat.equals("Income")) {
-	    	reportIncome(output);
-	    	return;
+			reportIncome(budget, out);
+			return;
 		}
-		output.println();
-		double total = 0;
-		double income = 0;
-		for (Month month : _budget.getMonths()) {
-	    	if (month.containsCat(cat)) {
-				double monthTot = month.getTotal(cat);
-				double monthInc = month.getTotal("Income");
-				double monthPerc = 100 * monthTot / monthInc;
-				income += monthInc;
-				if (monthTot < 0) {
-		    		total -= monthTot;
-		    		output.printf("  -In %s you spent $%.2f on %s", month.getName(), -monthTot, cat);
-				} else {
-		    		total += monthTot;
-		    		output.printf("  -In %s you spent $%.2f on %s", month.getName(), monthTot, cat);
-				}
-				if (monthInc > 0 && monthTot < 0) {
-		    		output.printf("%n   which was %.0f", -monthPerc);
-		    		output.print("% of your income that month");
-				} else if (monthInc > 0) {
-		    		output.printf("%n   which was %.0f", monthPerc);
-		    		output.print("% of your income that month");
-				}
-				output.printf("%n%n");
-	    	}
+		out.line();
+		long total = 0;
+		long income = 0;
+		for (Month month : budget.getMonths(cat)) {
+			long monthTot = month.getTotal(cat);
+			long monthInc = month.getTotal("Income");
+			double monthPerc = 100.0 * monthTot / monthInc;
+			income += monthInc;
+			out.text("  -In ").text(month.getName()).text(" you spent $");
+			if (monthTot < 0) {
+				total -= monthTot;
+				out.money(-monthTot);
+			} else {
+				total += monthTot;
+				out.money(monthTot);
+			}
+			out.text(" on ").text(cat);
+			if (monthInc > 0 && monthTot < 0) {
+				out.line().text("   which was ").fixed(-monthPerc, 0)
+					.text("% of your income that month");
+			} else if (monthInc > 0) {
+				out.line().text("   which was ").fixed(monthPerc, 0)
+					.text("% of your income that month");
+			}
+			out.line().line();
 		}
-		double percent = 100 * total / income;
+		out.text("  * Overall you spent $").money(total).text(" on ").text(cat);
 		if (income > 0) {
-	    	output.printf("  * Overall you spent $%.2f on %s,%n    using %.0f", total, cat, percent);
-	    	output.print("% of your total income.");
+			out.line(",").text("    using ").fixed(100.0 * total / income, 0)
+				.text("% of your total income.");
 		} else {
-	    	output.printf("  * Overall you spent $%.2f on %s.", total, cat);
-		}
-		output.printf("%n%n");
-    }
-
-    /** Reports on Income only to PrintStream OUTPUT. */
-    private void reportIncome(PrintStream output) {
-		output.println();
-		double income = 0;
-		double losses = 0;
-		for (Month month : _budget.getMonths()) {
-	    	double monthInc = month.getTotal("Income");
-	    	double monthLoss = month.getLosses();
-	    	income += monthInc;
-	    	losses += monthLoss;
-	    	output.printf("  In %s you made $%.2f%n", month.getName(), monthInc);
-	    	if (monthInc > 0) {
-				double perc = 100 * monthLoss / monthInc;
-				output.printf("   -You spent $%.2f, which was %.0f", monthLoss, perc);
-				output.println("% of your income");
-	    	} else {
-				output.printf("   -You spent $%.2f%n", monthLoss);
-	    	}
+			out.text(".");
+		}
+		out.line().line();
+    }
+
+    /** Reports the total of category CAT of BUDGET on each day of the
+     *  month, over all of its months, to OUT. Days on which CAT has no
+     *  Items are left out. */
+    void reportCatByDay(Budget budget, String cat, ReportBuilder out) {
+		int days = 0;
+		for (Month month : budget.getMonths(cat)) {
+			days = Math.max(days, month.getDays());
+		}
+		out.line().text("  ").text(cat).line(" by day:");
+		long total = 0;
+		for (int day = 1; day <= days; day++) {
+			long dayTot = 0;
+			int count = 0;
+			for (Month month : budget.getMonths(cat)) {
+				count += month.getCount(cat, day, day);
+				dayTot += month.getTotal(cat, day, day);
+			}
+			if (count == 0) {
+				continue;
+			}
+			total += dayTot;
+			out.text("   -Day ").text(Integer.toString(day)).text(": ")
+				.dollars(dayTot).text(" over ").text(Integer.toString(count))
+				.line(count == 1 ? " item" : " items");
+		}
+		out.line().text("  * Overall: ").dollars(total).line().line();
+    }
+
+    /** Reports on the Income of BUDGET only to OUT. */
+    private void reportIncome(Budget budget, ReportBuilder out) {
+		out.line();
+		long income = 0;
+		long losses = 0;
+		for (Month month : budget.getMonths()) {
+			long monthInc = month.getTotal("Income");
+			long monthLoss = month.getLosses();
+			income += monthInc;
+			losses += monthLoss;
+			out.text("  In ").text(month.getName()).text(" you made $")
+				.money(monthInc).line();
+			out.text("   -You spent $").money(monthLoss);
+			if (monthInc > 0) {
+				out.text(", which was ").fixed(100.0 * monthLoss / monthInc, 0)
+					.line("% of your income");
+			} else {
+				out.line();
+			}
 		}
-		output.printf("%n  Overall you made $%.2f%n", income);
+		out.line().text("  Overall you made $").money(income).line();
+		out.text("   -Overall you spent $").money(losses).line(",");
 		if (income > 0 && losses > 0) {
-	    	output.printf(
-	    		"   -Overall you spent $%.2f,%n    which was %.0f",
-	    		losses,
-	    		100 * losses / income
-	    	);
-	    	output.print("% of your total income.");
-	    	output.printf("%n%n");
-		} else {
-	    	output.printf("   -Overall you spent $%.2f,%n%n", losses);
+			out.text("    which was ").fixed(100.0 * losses / income, 0)
+				.text("% of your total income.").line();
+		}
+		out.line();
+    }
+
+    /** Writes TEXT to the file FILENAME in one block, replacing anything
+     *  already there. */
+    private static void writeText(String text, String fileName)
+		throws IOException {
+		try (Writer out = new BufferedWriter(new FileWriter(fileName))) {
+			out.write(text);
 		}
     }
 
     /** Reads and executes a save command. */
     private void saveCommand(String[] args) {
-		if (_monthNames.size() == 0) {
+		if (_view.getMonths().isEmpty()) {
 	    	_output.println("currently no loaded months");
 	    	return;
 		}
@@ -562,37 +1511,36 @@ class CommandInterpreter {
 	    	return;
 		}
 		if (args.length != 4 || !args[2].equals("as")) {
-	    	_output.println("ERROR: invalid save command");
+	    	error("invalid save command%n");
 	    	return;
 		}
-		collectCats();
-		PrintStream out = null;
-		try {
-	    	if (args[1].equals("budget")) {
-				out = new PrintStream(args[3] + ".txt");
-				reportBudget(out);
-				_output.printf("saved budget report as %s.txt%n", args[3]);
-	    	} else if (_monthNames.contains(args[1])) {
-				out = new PrintStream(args[3] + ".txt");
-				reportMonth(args[1], out);
-				_output.printf("saved %s report as %s.txt%n", args[1], args[3]);
-	    	} else if (args[1].equals("Income")) {
-				out = new PrintStream(args[3] + ".txt");
-				reportIncome(out);
-				_output.printf("saved Income report as %s.txt%n", args[3]);
-	    	} else if (_cats.contains(args[1])) {
-				out = new PrintStream(args[3] + ".txt");
-				reportCat(args[1], out);
-				_output.printf("saved %s report as %s.txt%n", args[1], args[3]);
-	    	} else {
-				_output.printf("ERROR: cannot report on %s%n", args[1]);
-	    	}
-		} catch (FileNotFoundException e) {
-	    	_output.printf("ERROR: trouble writing to %s.txt%n", args[3]);
-		} finally {
-	    	if (out != null) {
-				out.close();
+		if (args[1].equals("budget") && args[3].endsWith(".bg")) {
+	    	try {
+				Snapshot.write(_view, args[3]);
+				_output.printf("saved budget as %s%n", args[3]);
+	    	} catch (IOException e) {
+				error("trouble writing to %s%n", args[3]);
 	    	}
+	    	return;
+		}
+		String text;
+		if (args[1].equals("budget")) {
+			text = budgetReport();
+		} else if (_view.containsMonth(args[1])) {
+			text = monthReport(args[1]);
+		} else if (args[1].equals("Income")) {
+			text = incomeReport();
+		} else if (_view.containsCat(args[1])) {
+			text = catReport(args[1]);
+		} else {
+			error("cannot report on %s%n", args[1]);
+			return;
+		}
+		try {
+			writeText(text, args[3] + ".txt");
+			_output.printf("saved %s report as %s.txt%n", args[1], args[3]);
+		} catch (IOException e) {
+	    	error("trouble writing to %s.txt%n", args[3]);
 		}
     }
 
@@ -600,95 +1548,479 @@ class CommandInterpreter {
 	are saved as a text file. */
     private void saveSelectCommand(String[] args) {
         if (!args[args.length - 2].equals("as")) {
-	    	_output.printf("ERROR: invalid save select command%n");
+	    	error("invalid save select command%n");
 	    	return;
 		}
-		PrintStream out = null;
+		String text = selectResults(Arrays.copyOfRange(args, 1, args.length - 2));
 		try {
-	    	out = new PrintStream(args[args.length - 1] + ".txt");
-	    	selectCommand(Arrays.copyOfRange(args, 1, args.length - 2), out);
+			writeText(text == null ? "" : text, args[args.length - 1] + ".txt");
 	    	_output.printf("saved query as %s.txt%n", args[args.length - 1]);
-		} catch (FileNotFoundException e) {
-	    	_output.printf("ERROR: trouble writing to %s.txt%n", args[args.length - 1]);
-		} finally {
-	    	if (out != null) {
-				out.close();
-	    	}
+		} catch (IOException e) {
+	    	error("trouble writing to %s.txt%n", args[args.length - 1]);
 		}
     }
 
     /** Performs a select operation by only outputting the months
 	that meet the given conditions.*/
-    private void selectCommand(String[] args, PrintStream output) {
-		if (_monthNames.size() == 0) {
+    private void selectCommand(String[] args) {
+		String text = selectResults(args);
+		if (text != null) {
+			_output.print(text);
+		}
+    }
+
+    /** Returns the text of the results of the select statement whose words
+     *  are ARGS, or prints an error and returns null if it is invalid. */
+    private String selectResults(String[] args) {
+		if (_view.getMonths().isEmpty()) {
 	    	_output.println("currently no loaded months");
-	    	return;
+	    	return null;
+		}
+		if (args[1].equals("items")) {
+			return itemsResults(args);
+		}
+		if (args[1].equals("top")) {
+			return topResults(args);
+		}
+		if (args[1].equals("percentile")) {
+			return percentileResults(args);
+		}
+		if (!args[1].equals("months")) {
+			return groupResults(args);
 		}
 		if (!(args[1].equals("months") && args[2].equals("where"))) {
-	    	_output.println("ERROR: invalid select command");
-	    	return;
+	    	error("invalid select command%n");
+	    	return null;
 		}
 		ArrayList<Condition> conds = parseConditions(
 			Arrays.copyOfRange(args, 3, args.length));
 		if (conds == null) {
-	    	return;
+	    	return null;
 		}
-		ArrayList<Pair<String, ArrayList<Pair<String, Double>>>> dataList =
-	    		Condition.filter(conds, _budget);
-		output.printf("query results:%n%n");
-		for (Pair item : dataList) {
-	    	output.printf("  %s:%n", ((Month)item.getLeft()).getName());
-	    	for (Pair result : (ArrayList<Pair<String, Double>>)item.getRight()) {
-				double catVal = (double)result.getRight();
+		StringBuilder key = new StringBuilder("select months where");
+		for (int i = 0; i < conds.size(); i++) {
+			key.append(i == 0 ? " " : " and ").append(conds.get(i));
+		}
+		return cached(key.toString(), null, null,
+					  out -> reportResults(conds, out));
+    }
+
+    /** Returns the text of the results of the select items statement whose
+     *  words are ARGS, which selects the Items dated within a range of
+     *  days, or prints an error and returns null if it is invalid. */
+    private String itemsResults(String[] args) {
+		if (!((args.length == 8 || args.length == 12)
+			  && args[2].equals("where") && args[3].equals("date")
+			  && args[4].equals("between") && args[6].equals("and"))) {
+			error("invalid select command%n");
+			return null;
+		}
+		Integer from = parseDay(args[5]);
+		if (from == null) {
+			return null;
+		}
+		Integer to = parseDay(args[7]);
+		if (to == null) {
+			return null;
+		}
+		String cat = null;
+		if (args.length == 12) {
+			if (!(args[8].equals("and") && args[9].equals("cat")
+				  && args[10].equals("=="))) {
+				error("invalid select command%n");
+				return null;
+			}
+			if (!_view.containsCat(args[11])) {
+				error("%s is not a loaded category%n", args[11]);
+				return null;
+			}
+			cat = args[11];
+		}
+		String key = "select items where date between " + from + " and " + to;
+		if (cat != null) {
+			key += " and cat == " + cat;
+		}
+		String only = cat;
+		return cached(key, null, cat,
+					  out -> reportItems(from, to, only, out));
+    }
+
+    /** Returns the text of the results of the select top statement whose
+     *  words are ARGS, such as "select top 20 items in Food where date
+     *  between 1 and 15 and amount < -10", or prints an error and returns
+     *  null if it is invalid. */
+    private String topResults(String[] args) {
+		if (args.length < 4 || !args[3].equals("items")) {
+			error("invalid select command%n");
+			return null;
+		}
+		int limit;
+		try {
+			limit = Integer.parseInt(args[2]);
+		} catch (NumberFormatException e) {
+			limit = 0;
+		}
+		if (limit <= 0) {
+			error("%s is an invalid number of items%n", args[2]);
+			return null;
+		}
+		int next = 4;
+		String cat = null;
+		if (args.length > next && args[next].equals("in")) {
+			if (args.length == next + 1 || !_view.containsCat(args[next + 1])) {
+				error("%s is not a loaded category%n",
+					  args.length == next + 1 ? "" : args[next + 1]);
+				return null;
+			}
+			cat = args[next + 1];
+			next += 2;
+		}
+		int from = Integer.MIN_VALUE;
+		int to = Integer.MAX_VALUE;
+		ArrayList<Pair<AmountComparator, Long>> amounts =
+			new ArrayList<Pair<AmountComparator, Long>>();
+		StringBuilder key = new StringBuilder("select top ").append(limit)
+			.append(" items");
+		if (cat != null) {
+			key.append(" in ").append(cat);
+		}
+		if (args.length > next) {
+			if (!args[next].equals("where")) {
+				error("invalid select command%n");
+				return null;
+			}
+			for (int i = next + 1; ; ) {
+				if (i + 4 < args.length && args[i].equals("date")
+					&& args[i + 1].equals("between")
+					&& args[i + 3].equals("and")) {
+					Integer start = parseDay(args[i + 2]);
+					if (start == null) {
+						return null;
+					}
+					Integer end = parseDay(args[i + 4]);
+					if (end == null) {
+						return null;
+					}
+					from = Math.max(from, start);
+					to = Math.min(to, end);
+					i += 5;
+				} else if (i + 2 < args.length && args[i].equals("amount")) {
+					AmountComparator comp = AmountComparator.parse(args[i + 1]);
+					if (comp == null) {
+						error("%s is not a valid comparator%n", args[i + 1]);
+						return null;
+					}
+					try {
+						amounts.add(new Pair<AmountComparator, Long>(
+										comp, Money.parse(args[i + 2])));
+					} catch (NumberFormatException e) {
+						error("%s is an invalid value%n", args[i + 2]);
+						return null;
+					}
+					i += 3;
+				} else {
+					error("invalid select command%n");
+					return null;
+				}
+				if (i == args.length) {
+					break;
+				} else if (!args[i].equals("and") || i + 1 == args.length) {
+					error("invalid select command%n");
+					return null;
+				}
+				i++;
+			}
+			key.append(" where date between ").append(from).append(" and ")
+				.append(to);
+			for (Pair<AmountComparator, Long> amount : amounts) {
+				key.append(" and amount ").append(amount.getLeft()).append(' ')
+					.append(Money.format(amount.getRight()));
+			}
+		}
+		int count = limit;
+		String only = cat;
+		int first = from;
+		int last = to;
+		return cached(key.toString(), null, cat,
+					  out -> reportTop(count, only, first, last, amounts, out));
+    }
+
+    /** Outputs the LIMIT largest Items of my budget to OUT, taking only
+     *  those of category CAT unless it is null, dated from day FROM to day
+     *  TO, inclusive, and whose amounts pass all of AMOUNTS. */
+    private void reportTop(int limit, String cat, int from, int to,
+						   List<Pair<AmountComparator, Long>> amounts,
+						   ReportBuilder out) {
+		boolean dated = from != Integer.MIN_VALUE || to != Integer.MAX_VALUE;
+		TopItems top = new TopItems(limit);
+		for (Month month : cat == null ? _view.getMonths()
+				 : _view.getMonths(cat)) {
+			Collection<String> cats = cat == null ? month.getCats()
+				: Collections.singleton(cat);
+			for (String name : cats) {
+				Category items = month.getCategory(name);
+				int source = top.source(month, name);
+				int[] selected = dated ? items.between(from, to) : null;
+				int size = dated ? selected.length : items.size();
+				for (int k = 0; k < size; k++) {
+					int i = dated ? selected[k] : k;
+					long amount = items.getAmount(i);
+					boolean pass = true;
+					for (Pair<AmountComparator, Long> test : amounts) {
+						pass = pass && test.getLeft().compare(amount,
+															  test.getRight());
+					}
+					if (pass) {
+						top.offer(source, i, amount);
+					}
+				}
+			}
+		}
+		top.report(out);
+    }
+
+    /** Returns the text of the results of the select percentile statement
+     *  whose words are ARGS, such as "select percentile 95 of Food", or
+     *  prints an error and returns null if it is invalid. */
+    private String percentileResults(String[] args) {
+		if (args.length != 5 || !args[3].equals("of")) {
+			error("invalid select command%n");
+			return null;
+		}
+		double percent;
+		try {
+			percent = Double.parseDouble(args[2]);
+		} catch (NumberFormatException e) {
+			percent = Double.NaN;
+		}
+		if (!(percent > 0 && percent <= 100)) {
+			error("%s is an invalid percentile%n", args[2]);
+			return null;
+		}
+		String cat = args[4];
+		if (!_view.containsCat(cat)) {
+			error("%s is not a loaded category%n", cat);
+			return null;
+		}
+		double wanted = percent;
+		return cached("select percentile " + args[2] + " of " + cat, null, cat,
+					  out -> reportPercentile(args[2], wanted, cat, out));
+    }
+
+    /** Outputs the amount at the PERCENT percentile, written as NAME, of
+     *  the Items of category CAT of my budget to OUT. */
+    private void reportPercentile(String name, double percent, String cat,
+								  ReportBuilder out) {
+		int count = 0;
+		for (Month month : _view.getMonths(cat)) {
+			count += month.getCount(cat);
+		}
+		Percentile percentile = new Percentile(count);
+		for (Month month : _view.getMonths(cat)) {
+			Category items = month.getCategory(cat);
+			for (int i = 0; i < items.size(); i++) {
+				percentile.add(items.getAmount(i));
+			}
+		}
+		out.line("query results:").line();
+		if (percentile.size() == 0) {
+			out.text("  ").text(cat).line(" has no items");
+		} else {
+			out.text("  percentile ").text(name).text(" of ").text(cat)
+				.text(": ").dollars(percentile.get(percent)).text(" over ")
+				.text(Integer.toString(percentile.size()))
+				.line(percentile.size() == 1 ? " item" : " items");
+		}
+		out.line();
+    }
+
+    /** Returns the text of the results of the aggregate select statement
+     *  whose words are ARGS, such as "select sum, count of items group by
+     *  category, month", or prints an error and returns null if it is
+     *  invalid. */
+    private String groupResults(String[] args) {
+		int of = Arrays.asList(args).indexOf("of");
+		if (!(of > 1 && args.length > of + 4 && args[of + 1].equals("items")
+			  && args[of + 2].equals("group") && args[of + 3].equals("by"))) {
+			error("invalid select command%n");
+			return null;
+		}
+		List<String> functions = commaList(args, 1, of);
+		List<String> keys = commaList(args, of + 4, args.length);
+		if (functions == null || keys == null || keys.size() > 2
+			|| keys.size() == 2 && keys.get(0).equals(keys.get(1))) {
+			error("invalid select command%n");
+			return null;
+		}
+		for (String function : functions) {
+			if (!Aggregation.FUNCTIONS.contains(function)) {
+				error("%s is not an aggregate function%n", function);
+				return null;
+			}
+		}
+		for (String key : keys) {
+			if (!Aggregation.KEYS.contains(key)) {
+				error("cannot group by %s%n", key);
+				return null;
+			}
+		}
+		String key = "select " + String.join(", ", functions)
+			+ " of items group by " + String.join(", ", keys);
+		return cached(key, null, null, out -> {
+				Aggregation aggregation = new Aggregation(functions, keys);
+				aggregation.add(_view);
+				aggregation.report(out);
+			});
+    }
+
+    /** Returns the words ARGS[FROM..TO) read as a list of single words
+     *  separated by commas, or null if any of them is empty or not a
+     *  single word. */
+    private static List<String> commaList(String[] args, int from, int to) {
+		ArrayList<String> words = new ArrayList<String>();
+		for (String word : String.join(" ", Arrays.copyOfRange(args, from, to))
+				 .split(",", -1)) {
+			word = word.trim();
+			if (word.isEmpty() || word.contains(" ")) {
+				return null;
+			}
+			words.add(word);
+		}
+		return words;
+    }
+
+    /** Returns the day written as WORD, or prints an error and returns
+     *  null if it is not a whole number. */
+    private Integer parseDay(String word) {
+		try {
+			return Integer.parseInt(word);
+		} catch (NumberFormatException e) {
+			error("%s is an invalid day%n", word);
+			return null;
+		}
+    }
+
+    /** Returns the amount in cents written as WORD, or prints an error
+     *  and returns null if it is not one. */
+    private Long parseAmount(String word) {
+		try {
+			return Money.parse(word);
+		} catch (NumberFormatException e) {
+			error("%s is an invalid value%n", word);
+			return null;
+		}
+    }
+
+    /** Outputs the Items of my budget dated from day FROM to day TO,
+     *  inclusive, to OUT, by month and category and in order of date. Only
+     *  the Items of category CAT are output, unless it is null. */
+    private void reportItems(int from, int to, String cat, ReportBuilder out) {
+		out.line("query results:").line();
+		long total = 0;
+		for (Month month : cat == null ? _view.getMonths()
+				 : _view.getMonths(cat)) {
+			Collection<String> cats = cat == null ? month.getCats()
+				: Collections.singleton(cat);
+			boolean found = false;
+			for (String name : cats) {
+				Category items = month.getCategory(name);
+				int[] selected = items.between(from, to);
+				if (selected.length == 0) {
+					continue;
+				}
+				if (!found) {
+					out.text("  ").text(month.getName()).line(":");
+					found = true;
+				}
+				long catTot = items.getTotal(from, to);
+				total += catTot;
+				out.text("   -").text(name).text(": ").dollars(catTot).line();
+				for (int i : selected) {
+					out.text("     *Day ").text(Integer.toString(items.getDate(i)))
+						.text(", ").text(month.getItemName(items.getNameId(i)))
+						.text(": ").dollars(items.getAmount(i)).line();
+				}
+			}
+			if (found) {
+				out.line();
+			}
+		}
+		out.text("  * Overall: ").dollars(total).line().line();
+    }
+
+    /** Outputs the months of my budget that satisfy all of CONDS, along
+     *  with their values for each condition, to OUT. */
+    private void reportResults(ArrayList<Condition> conds, ReportBuilder out) {
+		ArrayList<Pair<Month, ArrayList<Pair<String, Long>>>> dataList =
+	    		Condition.filter(conds, _view);
+		out.line("query results:").line();
+		for (Pair<Month, ArrayList<Pair<String, Long>>> item : dataList) {
+			out.text("  ").text(item.getLeft().getName()).line(":");
+			for (Pair<String, Long> result : item.getRight()) {
+				long catVal = result.getRight();
+				out.text("   -").text(result.getLeft());
 				if (catVal < 0) {
-		    		output.printf("   -%s: -$%.2f%n", result.getLeft(), -catVal);
+					out.text(": -$").money(-catVal).line();
 				} else {
-		    		output.printf("   -%s: $%.2f%n", result.getLeft(), catVal);
+					out.text(": $").money(catVal).line();
 				}
-	    	}
-	    	output.println();
+			}
+			out.line();
 		}
     }
 
-    /** Parses input array ARGS as a list of condition statements and returns a list
-     *  of corresponding Condition objects. Returns NULL if any error occurs. */
+    /** Parses input array ARGS as a list of condition statements on the
+     *  current budget, as by parseConditions(ARGS, _view). */
     ArrayList<Condition> parseConditions(String[] args) {
-		collectCats();
+		return parseConditions(args, _view);
+    }
+
+    /** Parses input array ARGS as a list of condition statements on the
+     *  categories of BUDGET and returns a list of corresponding Condition
+     *  objects. Returns NULL if any error occurs. */
+    ArrayList<Condition> parseConditions(String[] args, Budget budget) {
 		if ((args.length % 4) != 3) {
-	    	_output.println("ERROR: invalid select command");
+	    	error("invalid select command%n");
 	    	return null;
 		}
 		ArrayList<Condition> conds = new ArrayList<Condition>();
 		for (int i = 0; i < args.length; i += 4) {
-	    	if (!(_cats.contains(args[i]) || args[i].equals("Total") ||
+	    	if (!(budget.containsCat(args[i]) || args[i].equals("Total") ||
 		  		args[i].equals("Expenditures"))) {
-				_output.printf("ERROR: %s is not a loaded category%n", args[i]);
+				error("%s is not a loaded category%n", args[i]);
 				return null;
 	    	}
-	    	if (!(args[i+1].equals("==") || args[i+1].equals("!=")
-	    			|| args[i+1].equals("<") || args[i+1].equals("<=")
-	    			|| args[i+1].equals(">=") || args[i+1].equals(">"))) {
-					_output.printf("ERROR: %s is not a valid comparator%n", args[i+1]);
+	    	AmountComparator comp = AmountComparator.parse(args[i+1]);
+	    	if (comp == null) {
+					error("%s is not a valid comparator%n", args[i+1]);
 				return null;
 	    	}
-	    	double value;
+	    	long value;
 	    	try {
-				value = Double.parseDouble(args[i+2]);
+				value = Money.parse(args[i+2]);
 	    	} catch (Exception e) {
-				_output.printf("ERROR: %s is an invalid value%n", args[i+2]);
+				error("%s is an invalid value%n", args[i+2]);
 				return null;
 	    	}
-	    	conds.add(new Condition(args[i], new DoubleComparator(args[i+1]), value));
+	    	conds.add(new Condition(args[i], comp, value));
 	    	if ((i + 3) == args.length) {
 				break;
 	    	} else if (!args[i+3].equals("and")) {
-				_output.println("ERROR: invalid select command");
+				error("invalid select command%n");
 			return null;
 	    	}
 		}
 		return conds;
     }
 
+    /** A FILEPARSER reads a .bgi file into a Month. */
+    private interface FileParser {
+
+		/** Returns the Month read from the .bgi file FILENAME. */
+		Month parse(String fileName) throws IOException;
+
+    }
+
     private static class BGIFileFilter implements FilenameFilter {
 
 		public boolean accept(File dir, String name) {
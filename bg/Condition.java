@@ -2,69 +2,170 @@ package bg;
 
 import java.util.List;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.function.ToLongFunction;
 
 /** A CONDITION represents  condition statement which is a statement that
  *  is either true or false. A CONDITION simply tests a value from
  *  a month (like the total for a certain category) against another value
- *  in the form of a double that is input by the user.
+ *  in the form of an amount of cents that is input by the user.
+ *
+ *  The way a Condition gets its value from a month and compares it is
+ *  worked out once, when it is made, so testing it against a month does
+ *  no work on strings. Its category name is interned, like the category
+ *  names of Months, so that looking it up in a month only compares
+ *  references.
  *  @author Brodie Vivio
  */
 class Condition {
 
+    /** The cost of getting a month's overall total. */
+    private static final double TOTAL_COST = 1;
+    /** The cost of getting a month's expenditures. */
+    private static final double EXPENDITURES_COST = 2;
+    /** The cost of getting the total of one of a month's categories. */
+    private static final double CAT_COST = 1.5;
+
     /** My category. */
     private String _cat;
     /** My comparator. */
-    private DoubleComparator _comparator;
-    /** My value to compare against. */
-    private double _value;
+    private AmountComparator _comparator;
+    /** My value to compare against, in cents. */
+    private long _value;
+    /** The function giving the value of a month that I test. */
+    private ToLongFunction<Month> _extractor;
+    /** My expected cost per month rejected; conditions with lower ranks
+     *  are tested first. */
+    private double _rank;
 
-    Condition(String cat, DoubleComparator comp,
-	      double val) {
-	_cat = cat;
+    Condition(String cat, AmountComparator comp,
+	      long val) {
+	_cat = cat.intern();
 	_comparator = comp;
 	_value = val;
+	double cost;
+	switch (_cat) {
+	case "Total":
+	    _extractor = Month::getTotal;
+	    cost = TOTAL_COST;
+	    break;
+	case "Expenditures":
+	    _extractor = Month::getLosses;
+	    cost = EXPENDITURES_COST;
+	    break;
+	default:
+	    String key = _cat;
+	    _extractor = month -> month.getTotal(key);
+	    cost = CAT_COST;
+	}
+	_rank = cost / (1 - comp.getSelectivity());
     }
 
     String getCat() {
 	return _cat;
     }
 
-    DoubleComparator getComp() {
+    AmountComparator getComp() {
 	return _comparator;
     }
 
-    double getValue() {
+    long getValue() {
 	return _value;
     }
 
-    static ArrayList<Pair<String, ArrayList<Pair<String, Double>>>> filter(List<Condition> conds,
-									   Budget budget) {
-	ArrayList<Pair<String, ArrayList<Pair<String, Double>>>> retList =
-	    new ArrayList<Pair<String, ArrayList<Pair<String, Double>>>>();
-	for (Month month : budget.getMonths()) {
-	    ArrayList<Pair<String, Double>> monthData = new ArrayList<Pair<String, Double>>();
-	    boolean monthPass = true;
-	    
-	    for (Condition cond : conds) {
-		double monthVal;
-		if (cond.getCat().equals("Total")) {
-		    monthVal = month.getTotal();
-		} else if (cond.getCat().equals("Expenditures")) {
-		    monthVal = month.getLosses();
-		} else {
-		    monthVal = month.getTotal(cond.getCat());
-		}
-		if (cond.getComp().compare(monthVal, cond.getValue())) {
-		    monthData.add(new Pair(cond.getCat(), monthVal));
-		} else {
-		    monthPass = false;
-		    break;
+    /** Returns the value of MONTH that I test. */
+    long valueOf(Month month) {
+	return _extractor.applyAsLong(month);
+    }
+
+    /** Returns true iff the value VAL passes me. */
+    boolean test(long val) {
+	return _comparator.compare(val, _value);
+    }
+
+    /** Returns me written in the normal form of a select condition, so
+     *  that conditions that test the same thing are written the same. */
+    @Override
+    public String toString() {
+	return _cat + " " + _comparator + " " + Money.format(_value);
+    }
+
+    /** Returns the Months of BUDGET that pass all of CONDS, in order,
+     *  each paired with its values for CONDS. Months are tested in
+     *  parallel if BUDGET has enough of them. */
+    static ArrayList<Pair<Month, ArrayList<Pair<String, Long>>>> filter(List<Condition> conds,
+									  Budget budget) {
+	ArrayList<Pair<Month, ArrayList<Pair<String, Long>>>> retList =
+	    new ArrayList<Pair<Month, ArrayList<Pair<String, Long>>>>();
+	Integer[] order = new Integer[conds.size()];
+	for (int i = 0; i < order.length; i++) {
+	    order[i] = i;
+	}
+	Arrays.sort(order, Comparator.comparingDouble(i -> conds.get(i)._rank));
+	Condition[] plan = new Condition[order.length];
+	for (int i = 0; i < order.length; i++) {
+	    plan[i] = conds.get(order[i]);
+	}
+	long start = Stats.start();
+	long evaluated = 0;
+	long shortCircuits = 0;
+	List<Month> months = budget.getMonths();
+	for (Match match : Parallel.map(months, month -> match(month, plan,
+								 order))) {
+	    evaluated += match._tested;
+	    if (match._values == null) {
+		if (match._tested < plan.length) {
+		    shortCircuits++;
 		}
+		continue;
 	    }
-	    if (monthPass) {
-		retList.add(new Pair(month, monthData));
+	    ArrayList<Pair<String, Long>> monthData = new ArrayList<Pair<String, Long>>();
+	    for (int i = 0; i < match._values.length; i++) {
+		monthData.add(new Pair<String, Long>(conds.get(i).getCat(),
+						     match._values[i]));
 	    }
+	    retList.add(new Pair<Month, ArrayList<Pair<String, Long>>>(
+		match._month, monthData));
 	}
+	Stats.filtered(months.size(), evaluated, shortCircuits, start);
 	return retList;
     }
+
+    /** Returns the Match of MONTH against the conditions PLAN, which are
+     *  tested in order until one fails. ORDER[I] is the index among the
+     *  conditions of the query of PLAN[I]. */
+    private static Match match(Month month, Condition[] plan,
+			       Integer[] order) {
+	long[] values = new long[plan.length];
+	for (int i = 0; i < plan.length; i++) {
+	    long monthVal = plan[i].valueOf(month);
+	    if (!plan[i].test(monthVal)) {
+		return new Match(month, null, i + 1);
+	    }
+	    values[order[i]] = monthVal;
+	}
+	return new Match(month, values, plan.length);
+    }
+
+
+    /** A MATCH is the outcome of testing one Month against the conditions
+     *  of a query. */
+    private static class Match {
+
+	/** The Month tested. */
+	private final Month _month;
+	/** The values of the Month for each condition of the query, in the
+	 *  order of the query, or null if the Month failed one of them. */
+	private final long[] _values;
+	/** The number of conditions tested. */
+	private final int _tested;
+
+	Match(Month month, long[] values, int tested) {
+	    _month = month;
+	    _values = values;
+	    _tested = tested;
+	}
+
+    }
 }
@@ -2,7 +2,7 @@ package bg;
 
 /** An ITEM is a single purchase or deposit which has a name, a date
  *  (an integer representing the day of the month), and an amount that
- *  can be either positive or negative.
+ *  can be either positive or negative. Amounts are in cents.
  *  @author Brodie Vivio
 */
 class Item {
@@ -11,10 +11,10 @@ class Item {
     private String _name;
     /** My date. */
     private int _date;
-    /** My amount. */
-    private double _amount;
+    /** My amount in cents. */
+    private long _amount;
 
-    Item(String name, int date, double amount) {
+    Item(String name, int date, long amount) {
 	_name = name;
 	_date = date;
 	_amount = amount;
@@ -28,7 +28,7 @@ class Item {
 	return _date;
     }
 
-    double getAmount() {
+    long getAmount() {
 	return _amount;
     }
 
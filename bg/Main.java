@@ -1,9 +1,28 @@
 package bg;
 
+import java.io.BufferedOutputStream;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.io.Reader;
 import java.util.Scanner;
 
 /** MAIN is simply the starting point of the program to initiate the
  *  COMMANDINTERPRETER which takes over until the program is exited.
+ *
+ *  Run as 'java bg.Main -b SCRIPT' (or '--batch'), budgetGuide instead
+ *  runs the bgSQL statements in the file SCRIPT, or on the standard input
+ *  if SCRIPT is '-' or missing, without prompts. Results go to the
+ *  standard output and the time taken by each statement to the standard
+ *  error, and the exit status is nonzero if any statement failed.
+ *
+ *  Run as 'java bg.Main -s PORT SCRIPT' (or '--serve'), budgetGuide runs
+ *  the statements in SCRIPT, if given, to load a budget and then serves
+ *  statements on it to connections to PORT on the local host, as
+ *  described in Server, until it is killed.
  *  @author Brodie Vivio
 */
 public class Main {
@@ -11,6 +30,19 @@ public class Main {
     private static final String VERSION = "3.6";
 
     public static void main(String[] args) {
+	if (args.length > 0) {
+	    if (args.length <= 2
+		&& (args[0].equals("-b") || args[0].equals("--batch"))) {
+		System.exit(batch(args.length == 2 ? args[1] : "-"));
+	    }
+	    if ((args.length == 2 || args.length == 3)
+		&& (args[0].equals("-s") || args[0].equals("--serve"))) {
+		System.exit(serve(args[1], args.length == 3 ? args[2] : null));
+	    }
+	    System.err.println(
+		"usage: java bg.Main [-b [SCRIPT] | -s PORT [SCRIPT]]");
+	    System.exit(2);
+	}
 	System.out.printf("Welcome to budgetGuide version %s!%n", VERSION);
 	CommandInterpreter interpreter = new CommandInterpreter();
 	while (!interpreter.end()) {
@@ -20,4 +52,62 @@ public class Main {
 	System.exit(0);
     }
 
+    /** Runs the bgSQL script in the file FILENAME, or on the standard
+     *  input if FILENAME is "-", and returns the exit status: 0 if every
+     *  statement succeeded, 1 if any printed an error and 2 if the script
+     *  could not be read. All results are written through one buffered
+     *  stream, which is only flushed when it fills and at the end. */
+    private static int batch(String fileName) {
+	Script script;
+	try (Reader input = fileName.equals("-")
+		 ? new InputStreamReader(System.in) : new FileReader(fileName)) {
+	    script = Script.read(input);
+	} catch (IOException e) {
+	    System.err.printf("ERROR: cannot read script %s%n", fileName);
+	    return 2;
+	}
+	PrintStream output = new PrintStream(new BufferedOutputStream(
+	    new FileOutputStream(FileDescriptor.out), 1 << 16));
+	CommandInterpreter interpreter =
+	    new CommandInterpreter(new Scanner(""), output);
+	int errors = script.run(interpreter, System.err);
+	interpreter.close();
+	return errors == 0 ? 0 : 1;
+    }
+
+    /** Runs the bgSQL script in the file FILENAME, unless it is null, and
+     *  then serves statements on the budget it loaded on port PORT of the
+     *  local host, or on a free port if PORT is 0, until killed. Returns
+     *  the exit status: 2 if the script could not be read or PORT cannot
+     *  be listened on, and 1 if the server fails. Errors in the script are
+     *  printed but do not stop the server. */
+    private static int serve(String port, String fileName) {
+	CommandInterpreter interpreter =
+	    new CommandInterpreter(new Scanner(""), System.out);
+	if (fileName != null) {
+	    try (Reader input = new FileReader(fileName)) {
+		Script.read(input).run(interpreter, System.err);
+	    } catch (IOException e) {
+		System.err.printf("ERROR: cannot read script %s%n", fileName);
+		return 2;
+	    }
+	}
+	Server server;
+	try {
+	    server = new Server(interpreter.getBudget(), Integer.parseInt(port));
+	} catch (IllegalArgumentException | IOException e) {
+	    System.err.printf("ERROR: cannot listen on port %s%n", port);
+	    return 2;
+	}
+	System.out.printf("serving budgetGuide %s on port %d%n", VERSION,
+			  server.getPort());
+	try {
+	    server.run();
+	} catch (IOException e) {
+	    System.err.printf("ERROR: %s%n", e.getMessage());
+	    return 1;
+	}
+	return 0;
+    }
+
 }
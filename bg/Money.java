@@ -0,0 +1,132 @@
+package bg;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.charset.StandardCharsets;
+import java.util.regex.Pattern;
+
+/** MONEY holds the static methods used to work with amounts of money,
+ *  which are represented throughout budgetGuide as a long number of
+ *  cents so that sums are exact.
+ *  @author Brodie Vivio
+ */
+class Money {
+
+    /** The most digits a parsed amount may have before its decimal
+     *  point, so that its number of cents always fits in a long. */
+    private static final int MAX_DIGITS = 16;
+
+    /** Matches the amounts that are not plain decimals but are still
+     *  valid: those with commas between groups of three digits before
+     *  the decimal point, or an exponent, or both, like "1,000.50" or
+     *  "1e2". */
+    private static final Pattern GENERAL =
+	Pattern.compile("[-+]?(\\d{1,3}(,\\d{3})+|\\d*)(\\.\\d*)?"
+			+ "([eE][-+]?\\d+)?");
+
+    /** Returns the decimal amount in BYTES[OFF..OFF+LEN) as a number of
+     *  cents, rounding half away from zero to the nearest cent. Throws a
+     *  NumberFormatException if the bytes are not a valid amount. */
+    static long parse(byte[] bytes, int off, int len) {
+	int i = off;
+	int end = off + len;
+	boolean negative = false;
+	if (i < end && (bytes[i] == '-' || bytes[i] == '+')) {
+	    negative = bytes[i] == '-';
+	    i++;
+	}
+	long cents = 0;
+	int digits = 0;
+	int decimals = -1;
+	boolean roundUp = false;
+	for (; i < end; i++) {
+	    byte b = bytes[i];
+	    if (b == '.' && decimals < 0) {
+		decimals = 0;
+		continue;
+	    }
+	    int digit = b - '0';
+	    if (digit < 0 || digit > 9) {
+		return parseGeneral(new String(bytes, off, len,
+					       StandardCharsets.US_ASCII));
+	    }
+	    digits++;
+	    if (decimals < 0) {
+		if (digits > MAX_DIGITS) {
+		    throw new NumberFormatException();
+		}
+		cents = 10 * cents + digit;
+	    } else if (decimals < 2) {
+		cents = 10 * cents + digit;
+		decimals++;
+	    } else if (decimals == 2) {
+		roundUp = digit >= 5;
+		decimals++;
+	    }
+	}
+	if (digits == 0) {
+	    throw new NumberFormatException();
+	}
+	for (int d = Math.max(decimals, 0); d < 2; d++) {
+	    cents *= 10;
+	}
+	if (roundUp) {
+	    cents++;
+	}
+	return negative ? -cents : cents;
+    }
+
+    /** Returns the amount S, which has grouping commas or an exponent, as
+     *  a number of cents, rounding half away from zero to the nearest
+     *  cent. Throws a NumberFormatException if S is not a valid amount
+     *  or has more than MAX_DIGITS digits before its decimal point. */
+    private static long parseGeneral(String s) {
+	if (!GENERAL.matcher(s).matches()) {
+	    throw new NumberFormatException(s);
+	}
+	BigDecimal amount = new BigDecimal(s.replace(",", ""));
+	int digits = amount.precision() - amount.scale();
+	if (amount.signum() == 0 || digits < -2) {
+	    return 0;
+	}
+	if (digits > MAX_DIGITS) {
+	    throw new NumberFormatException(s);
+	}
+	return amount.setScale(2, RoundingMode.HALF_UP).unscaledValue()
+	    .longValue();
+    }
+
+    /** Returns the decimal amount S as a number of cents, rounding half
+     *  away from zero to the nearest cent. Throws a NumberFormatException
+     *  if S is not a valid amount. */
+    static long parse(String s) {
+	byte[] bytes = s.getBytes(StandardCharsets.US_ASCII);
+	return parse(bytes, 0, bytes.length);
+    }
+
+    /** Returns CENTS as an amount of dollars. */
+    static double toDollars(long cents) {
+	return cents / 100.0;
+    }
+
+    /** Returns CENTS written as dollars with two decimal places and a
+     *  leading minus sign if it is negative, like "-12.05". The decimal
+     *  separator is always '.', whatever the locale. */
+    static String format(long cents) {
+	return append(new StringBuilder(24), cents).toString();
+    }
+
+    /** Appends CENTS to RESULT written as by format(CENTS) and returns
+     *  RESULT. */
+    static StringBuilder append(StringBuilder result, long cents) {
+	if (cents < 0) {
+	    result.append('-');
+	    cents = -cents;
+	}
+	int fraction = (int) (cents % 100);
+	return result.append(cents / 100).append('.')
+	    .append((char) ('0' + fraction / 10))
+	    .append((char) ('0' + fraction % 10));
+    }
+
+}
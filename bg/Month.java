@@ -1,34 +1,103 @@
 package bg;
 
+import java.io.IOException;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
 import java.util.HashMap;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 /** A MONTH represents a complete .bgi file with a name, a number of days,
- *  a list of CATEGORIES, and a list of ITEMS.
+ *  a list of CATEGORIES, and a list of ITEMS. The ITEMS of each category
+ *  are stored column by column in a Category, and the names of all my
+ *  ITEMS are kept once each in a dictionary shared by my Categories. All
+ *  amounts are in cents.
+ *
+ *  A Month can also be loaded lazily from a MonthSource, in which case
+ *  its ITEMS are only read when they or its totals are first needed. The
+ *  ITEMS of lazily loaded Months are evicted again, least recently used
+ *  first, once more than a limit of them are in memory; their totals are
+ *  kept. The limit is set in items by the bg.lazyItems system property.
+ *  The Items read are kept in one object that is published whole and is
+ *  only let go of when they are evicted, so a thread reading a Month sees
+ *  all of its Items or reads them again, never a Month half evicted.
+ *
+ *  A Month is not changed once it is in a Budget, since readers may still
+ *  hold earlier versions of the Budget and other Budgets may share it.
+ *  Items are instead added to or removed from a copy, which shares all
+ *  but the category changed with the original, and even that category's
+ *  Items when one is only added.
  *  @author Brodie Vivio
 */
 class Month {
 
+    /** The most Items of lazily loaded Months kept in memory at once. */
+    private static final long LAZY_ITEM_LIMIT =
+	Long.getLong("bg.lazyItems", 10000000);
+    /** The lazily loaded Months whose Items are in memory, least
+     *  recently used first, mapped to their numbers of Items. Each Month
+     *  is held through its _resident reference, so that a Month no
+     *  longer in any Budget can be collected along with its Items. */
+    private static final LinkedHashMap<Reference<Month>, Integer> _resident =
+	new LinkedHashMap<Reference<Month>, Integer>(16, 0.75f, true);
+    /** The references of Months in _resident that have been
+     *  collected. */
+    private static final ReferenceQueue<Month> _collected =
+	new ReferenceQueue<Month>();
+    /** The number of Items of the Months in _resident. */
+    private static long _residentItems;
+
     /** My name. */
     private final String _name;
     /** The number of days in me. */
     private final int _days;
-    /** My map from names of budget categories to lists of their data. */
-    private HashMap<String, ArrayList<Item>> _data;
+    /** My Categories with my Items, and the dictionary of their names,
+     *  or null if my Items are not in memory. It is only changed in
+     *  place while I am being built or copied; after that it is replaced
+     *  as a whole when my Items are read and dropped when they are
+     *  evicted, so a reader that holds it never sees it change. */
+    private volatile Contents _items;
+    /** My Categories, which only need to know the number and total of
+     *  their Items. This is _items itself if I am not lazily loaded. */
+    private volatile Contents _summary;
+    /** Where my Items are read from if I was loaded lazily, or null. */
+    private volatile MonthSource _source;
+    /** My key in _resident, or null if I was not loaded lazily. */
+    private final Reference<Month> _reference;
+    /** The .bgi file that I was read from and that changes to me are
+     *  written to, or null. */
+    private String _file;
+    /** True iff the totals of _summary are known. */
+    private volatile boolean _hasTotals;
 
     /** Creates a new Month with name NAME and 30 days. */
     Month(String name) {
-	_name = name;
-	_days = 30;
-	_data = new HashMap<String, ArrayList<Item>>();
+	this(name, 30);
     }
 
     /** Creates a new Month with name NAME and DAYS days. */
     Month(String name, int days) {
+	this(name, days, null);
+	_items = _summary;
+	_hasTotals = true;
+    }
+
+    /** Creates a new lazily loaded Month with name NAME and DAYS days
+     *  whose Items will be read from SOURCE. Its categories must be added
+     *  with addCat, after which its Items are read on first use. */
+    Month(String name, int days, MonthSource source) {
 	_name = name;
 	_days = days;
-	_data = new HashMap<String, ArrayList<Item>>();
+	_source = source;
+	_summary = new Contents();
+	_reference = source == null ? null
+	    : new WeakReference<Month>(this, _collected);
     }
 
     /** Returns my name. */
@@ -41,72 +110,369 @@ class Month {
 	return _days;
     }
 
+    /** Returns the .bgi file that changes to me are written to, or null
+     *  if there is none. */
+    String getFile() {
+	return _file;
+    }
+
+    /** Sets the .bgi file that changes to me are written to to FILE. */
+    void setFile(String file) {
+	_file = file;
+    }
+
+    /** Returns a copy of me, with the same .bgi file, in which Items may
+     *  be added to or removed from my category CAT without changing me.
+     *  Only the Category CAT is copied, sharing its arrays until an Item
+     *  is removed from it, and my dictionary of item names only if NAME,
+     *  the name of an Item to be added, is not in it, sharing its array
+     *  and map while it is only appended to; the rest is shared, as
+     *  neither of us changes it. So adding an Item takes constant time
+     *  whether or not its name is known, while removing one takes time in
+     *  proportion to the number of Items of CAT. If I was loaded lazily,
+     *  my Items are read and from then on kept in memory, since changes
+     *  to the copy will be written to the file they are read from. */
+    Month copyFor(String cat, String name) {
+	Contents items = pin();
+	Month copy = new Month(_name, _days);
+	Contents copied = copy._items;
+	for (Map.Entry<String, Category> entry : items._data.entrySet()) {
+	    copied._data.put(entry.getKey(), entry.getKey().equals(cat)
+			     ? new Category(entry.getValue()) : entry.getValue());
+	}
+	if (name == null || items._names.find(name) != null) {
+	    copied._names = items._names;
+	} else {
+	    copied._names = new Names(items._names);
+	}
+	copied._total = items._total;
+	copy._file = _file;
+	return copy;
+    }
+
+    /** Makes sure my Items are in memory, stops me from ever reading
+     *  them from my source again, and returns them. */
+    private Contents pin() {
+	if (_source == null) {
+	    return _items;
+	}
+	Contents items = loaded();
+	synchronized (this) {
+	    _items = items;
+	    _summary = items;
+	    _source = null;
+	}
+	synchronized (_resident) {
+	    Integer size = _resident.remove(_reference);
+	    if (size != null) {
+		_residentItems -= size;
+	    }
+	}
+	return items;
+    }
+
     /** Adds a category with name NAME. */
     void addCat(String name) {
-	_data.put(name, new ArrayList<Item>());
+	Category category = new Category(name);
+	_summary._data.put(category.getName(), category);
+    }
+
+    /** Adds the whole Category CATEGORY, whose name indices must refer to
+     *  my dictionary of item names. CATEGORY may be a summary, in which
+     *  case only my totals can be used. If I am lazily loaded, my totals
+     *  are then taken to be known without reading my Items, so all of my
+     *  categories must be added this way. */
+    void addCat(Category category) {
+	_summary._data.put(category.getName(), category);
+	_summary._total += category.getTotal();
+	if (_source != null) {
+	    _hasTotals = true;
+	}
     }
 
     /** Returns true if this month contains category CAT. */
     boolean containsCat(String cat) {
-	return _data.containsKey(cat);
+	return _summary._data.containsKey(cat);
+    }
+
+    /** Returns true iff my totals are known without reading my Items. */
+    boolean hasTotals() {
+	return _hasTotals;
     }
 
     /** Adds Item ITEM to my category CAT. CAT must already be one of
      *  my categories. */
     void addItem(String cat, Item item) {
-	assert _data.containsKey(cat);
-	_data.get(cat).add(item);
+	addItem(cat, item.getName(), item.getDate(), item.getAmount());
     }
 
     /** Adds a new Item with name NAME, date DATE, and amount AMOUNT
      *  to my category CAT. CAT must already be one of my categories. */
-    void addItem(String cat, String name, int date, double amount) {
-	assert _data.containsKey(cat);
-	_data.get(cat).add(new Item(name, date, amount));
+    void addItem(String cat, String name, int date, long amount) {
+	Contents items = pin();
+	assert items._data.containsKey(cat);
+	items._data.get(cat).add(date, amount, addItemName(name));
+	items._total += amount;
     }
 
-    /** Returns a list of all my category names. */
-    List<String> getCats() {
-	ArrayList<String> list = new ArrayList<String>();
-	for (String cat : _data.keySet()) {
-	    list.add(cat);
+    /** Returns the index in my category CAT of its first Item with name
+     *  NAME, date DATE and amount AMOUNT, or -1 if it has none. */
+    int findItem(String cat, String name, int date, long amount) {
+	Contents contents = loaded();
+	Category items = contents._data.get(cat);
+	Integer nameId = contents._names.find(name);
+	if (items == null || nameId == null) {
+	    return -1;
 	}
-	return list;
+	return items.find(date, amount, nameId);
+    }
+
+    /** Removes the Item at index I of my category CAT and returns its
+     *  amount. */
+    long removeItem(String cat, int i) {
+	Contents contents = pin();
+	Category items = contents._data.get(cat);
+	long amount = items.getAmount(i);
+	items.remove(i);
+	contents._total -= amount;
+	return amount;
+    }
+
+    /** Adds NAME to my dictionary of item names if it is not already
+     *  there and returns its dictionary index. */
+    int addItemName(String name) {
+	return _items._names.add(name);
+    }
+
+    /** Returns the number of names in my dictionary of item names. */
+    int getItemNameCount() {
+	return loaded()._names.size();
+    }
+
+    /** Returns an unmodifiable view of all my category names. */
+    Set<String> getCats() {
+	return Collections.unmodifiableSet(_summary._data.keySet());
+    }
+
+    /** Returns the Category CAT, or null if CAT is not one of my
+     *  categories. */
+    Category getCategory(String cat) {
+	return loaded()._data.get(cat);
+    }
+
+    /** Returns the name with dictionary index NAMEID. Since my Items are
+     *  read the same way each time, this is the name of the Items with
+     *  that index in the Categories returned by getCategory even if my
+     *  Items were evicted and read again in between. */
+    String getItemName(int nameId) {
+	return loaded()._names.get(nameId);
     }
 
+    /** Returns the Item at index I of my category CAT, which must be one
+     *  of my categories. */
+    Item getItem(String cat, int i) {
+	Category items = getCategory(cat);
+	return new Item(getItemName(items.getNameId(i)), items.getDate(i),
+			items.getAmount(i));
+    }
+
+    /** Returns a list of all the Items in my category CAT, which must be
+     *  one of my categories. */
+    List<Item> getItems(String cat) {
+	int size = getCategory(cat).size();
+	ArrayList<Item> list = new ArrayList<Item>(size);
+	for (int i = 0; i < size; i++) {
+	    list.add(getItem(cat, i));
+	}
+	return list;
+    }
 
     /** Prints out the names of all of my categories on one line. */
     void printCats() {
-	for (String cat : _data.keySet()) {
+	for (String cat : getCats()) {
 	    System.out.print(cat + "   ");
 	}
 	System.out.println();
     }
 
-    /** Returns the total amount of category CAT and adds this
-     *  value to the _totals map if not already present. */
-    double getTotal(String cat) {
-	assert _data.containsKey(cat);
-	double total = 0;
-	for (Item item : _data.get(cat)) {
-	    total += item.getAmount();
-	}
-	return total;
+    /** Returns the total amount of category CAT, or 0 if CAT is not one
+     *  of my categories. */
+    long getTotal(String cat) {
+	Stats.aggregated();
+	Category items = totals()._data.get(cat);
+	return items == null ? 0 : items.getTotal();
     }
 
-    /** Returns the total amount for the entire month and sets
-     *  _monTot to this value if not already set. */
-    double getTotal() {
-	double total = 0;
-	for (String cat : _data.keySet()) {
-	    total += getTotal(cat);
-	}
-	return total;
+    /** Returns the number of Items in category CAT, or 0 if CAT is not
+     *  one of my categories. */
+    int getCount(String cat) {
+	Category items = totals()._data.get(cat);
+	return items == null ? 0 : items.size();
+    }
+
+    /** Returns the total amount of the Items of category CAT dated from
+     *  day FROM to day TO, inclusive, or 0 if CAT is not one of my
+     *  categories. */
+    long getTotal(String cat, int from, int to) {
+	Stats.aggregated();
+	Category items = getCategory(cat);
+	return items == null ? 0 : items.getTotal(from, to);
+    }
+
+    /** Returns the number of Items of category CAT dated from day FROM
+     *  to day TO, inclusive, or 0 if CAT is not one of my categories. */
+    int getCount(String cat, int from, int to) {
+	Category items = getCategory(cat);
+	return items == null ? 0 : items.count(from, to);
+    }
+
+    /** Returns the total amount for the entire month. */
+    long getTotal() {
+	Stats.aggregated();
+	return totals()._total;
     }
 
     /** Returns the amount of money spent this month (as a positive value). */
-    double getLosses() {
+    long getLosses() {
 	return -(getTotal() - getTotal("Income"));
     }
 
+    /** Returns my Categories with their totals known, reading my Items
+     *  if needed. */
+    private Contents totals() {
+	if (!_hasTotals) {
+	    loaded();
+	}
+	return _summary;
+    }
+
+    /** Returns my Categories with my Items in memory, reading them from
+     *  my source if needed. Throws a RuntimeException if they cannot be
+     *  read. */
+    private Contents loaded() {
+	Contents items = _items;
+	if (items == null) {
+	    items = load();
+	}
+	if (_source != null) {
+	    touch(items);
+	}
+	return items;
+    }
+
+    /** Reads my Items from my source, unless another thread already has,
+     *  and returns them. */
+    private synchronized Contents load() {
+	Contents items = _items;
+	if (items != null) {
+	    return items;
+	}
+	Month fresh = new Month(_name, _days);
+	for (String cat : getCats()) {
+	    fresh.addCat(cat);
+	}
+	try {
+	    _source.readItems(fresh);
+	} catch (IOException | RuntimeException e) {
+	    throw new RuntimeException(String.format(
+		"items of month %s could not be read; %s", _name,
+		String.valueOf(e.getMessage()).trim()));
+	}
+	items = fresh._items;
+	if (!_hasTotals) {
+	    _summary = items.summary();
+	    _hasTotals = true;
+	}
+	_items = items;
+	return items;
+    }
+
+    /** Records that my Items ITEMS were just used, evicting the Items of
+     *  the least recently used lazily loaded Months if too many are in
+     *  memory. Months that have been collected are forgotten first. */
+    private void touch(Contents items) {
+	ArrayList<Month> evicted = new ArrayList<Month>();
+	synchronized (_resident) {
+	    for (Reference<? extends Month> collected = _collected.poll();
+		 collected != null; collected = _collected.poll()) {
+		Integer size = _resident.remove(collected);
+		if (size != null) {
+		    _residentItems -= size;
+		}
+	    }
+	    Integer size = _resident.put(_reference, items.itemCount());
+	    if (size == null) {
+		_residentItems += _resident.get(_reference);
+	    }
+	    Iterator<Map.Entry<Reference<Month>, Integer>> entries =
+		_resident.entrySet().iterator();
+	    while (_residentItems > LAZY_ITEM_LIMIT && entries.hasNext()) {
+		Map.Entry<Reference<Month>, Integer> entry = entries.next();
+		Month month = entry.getKey().get();
+		if (month != this) {
+		    _residentItems -= entry.getValue();
+		    entries.remove();
+		    if (month != null) {
+			evicted.add(month);
+		    }
+		}
+	    }
+	}
+	for (Month month : evicted) {
+	    month.evictItems();
+	}
+    }
+
+    /** Drops my Items from memory, keeping only the number and total of
+     *  the Items in each of my categories. Readers still holding my Items
+     *  keep them until they are done. */
+    private synchronized void evictItems() {
+	if (_source != null) {
+	    _items = null;
+	}
+    }
+
+
+    /** A CONTENTS holds the Categories of a Month, with its Items or
+     *  only their numbers and totals, and the dictionary of their
+     *  names. */
+    private static class Contents {
+
+	/** My map from names of budget categories to their data. */
+	private final HashMap<String, Category> _data;
+	/** The dictionary of the distinct names of my Items. */
+	private Names _names;
+	/** The sum of the amounts of all my Items. */
+	private long _total;
+
+	/** Creates a new Contents with no categories. */
+	Contents() {
+	    _data = new HashMap<String, Category>();
+	    _names = new Names();
+	}
+
+	/** Returns a new Contents with my categories, each of which only
+	 *  knows the number and total of my Items in it. */
+	Contents summary() {
+	    Contents summary = new Contents();
+	    for (Map.Entry<String, Category> entry : _data.entrySet()) {
+		Category items = entry.getValue();
+		summary._data.put(entry.getKey(), new Category(
+		    items.getName(), items.size(), items.getTotal()));
+	    }
+	    summary._total = _total;
+	    return summary;
+	}
+
+	/** Returns the number of Items in me. */
+	int itemCount() {
+	    int count = 0;
+	    for (Category items : _data.values()) {
+		count += items.size();
+	    }
+	    return count;
+	}
+
+    }
+
 }
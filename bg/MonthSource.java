@@ -0,0 +1,17 @@
+package bg;
+
+import java.io.IOException;
+
+/** A MONTHSOURCE is where the Items of a lazily loaded Month are read
+ *  from when they are first needed, and again if they are needed after
+ *  being evicted from memory.
+ *  @author Brodie Vivio
+ */
+interface MonthSource {
+
+    /** Reads all of the Items of my month into MONTH, which already has
+     *  all of the month's categories, by calling its addItem method or
+     *  by replacing whole categories with addCat. */
+    void readItems(Month month) throws IOException;
+
+}
@@ -0,0 +1,107 @@
+package bg;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/** A NAMES is the dictionary of the distinct names of the Items of a
+ *  Month, which its Categories refer to by index. Names are only ever
+ *  added, each at the next index, and are kept in an array along with a
+ *  map from each name to its index.
+ *
+ *  A copy of a Names, made to add names to it while the original stays as
+ *  it is, shares the original's array and map, as Category shares its
+ *  arrays. A name added to the copy goes in the free room at the end of
+ *  the array, which the original never reads, and in the map, where the
+ *  original ignores it since its index is past the original's size. So
+ *  adding a name takes constant time however many names there are. Only
+ *  one of the Names sharing the array and map may claim each index; the
+ *  others copy them first.
+ *  @author Brodie Vivio
+ */
+class Names {
+
+    /** The number of names a new Names has room for. */
+    private static final int INITIAL_CAPACITY = 16;
+
+    /** My names, by index. */
+    private String[] _names;
+    /** The number of my names. */
+    private int _size;
+    /** My map from names to their indices. Names added by other Names
+     *  sharing it have indices of _size or more. */
+    private ConcurrentHashMap<String, Integer> _ids;
+    /** The number of indices claimed by me and the other Names sharing
+     *  my array and map, or null if no other Names does. */
+    private AtomicInteger _claimed;
+
+    /** Creates a new empty Names. */
+    Names() {
+	_names = new String[INITIAL_CAPACITY];
+	_ids = new ConcurrentHashMap<String, Integer>();
+    }
+
+    /** Creates a new Names holding the names of OTHER and sharing its
+     *  array and map. OTHER may not be changed after this. */
+    Names(Names other) {
+	_names = other._names;
+	_size = other._size;
+	_ids = other._ids;
+	_claimed = other.claimed();
+    }
+
+    /** Returns the number of my names. */
+    int size() {
+	return _size;
+    }
+
+    /** Returns the name with index ID. */
+    String get(int id) {
+	if (id >= _size) {
+	    throw new IndexOutOfBoundsException(id);
+	}
+	return _names[id];
+    }
+
+    /** Returns the index of NAME, or null if it is not one of mine. */
+    Integer find(String name) {
+	Integer id = _ids.get(name);
+	return id == null || id >= _size ? null : id;
+    }
+
+    /** Adds NAME if it is not already one of mine and returns its
+     *  index. */
+    int add(String name) {
+	Integer id = find(name);
+	if (id != null) {
+	    return id;
+	}
+	if (_claimed != null && !_claimed.compareAndSet(_size, _size + 1)) {
+	    ConcurrentHashMap<String, Integer> ids =
+		new ConcurrentHashMap<String, Integer>();
+	    for (int i = 0; i < _size; i++) {
+		ids.put(_names[i], i);
+	    }
+	    _names = Arrays.copyOf(_names, Math.max(2 * _size,
+						    INITIAL_CAPACITY));
+	    _ids = ids;
+	    _claimed = null;
+	} else if (_size == _names.length) {
+	    _names = Arrays.copyOf(_names, 2 * _size);
+	}
+	_names[_size] = name;
+	_ids.put(name, _size);
+	return _size++;
+    }
+
+    /** Returns the count of indices claimed in my array and map, which I
+     *  am about to share with a copy of me, starting it if no one shares
+     *  them yet. */
+    private synchronized AtomicInteger claimed() {
+	if (_claimed == null) {
+	    _claimed = new AtomicInteger(_size);
+	}
+	return _claimed;
+    }
+
+}
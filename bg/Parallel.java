@@ -0,0 +1,131 @@
+package bg;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+
+/** PARALLEL applies a function to each element of a list, such as the
+ *  Months of a Budget, on a fork-join pool when the list is long enough
+ *  for that to pay off, and in a plain loop otherwise. Either way the
+ *  results come back in the order of the list.
+ *
+ *  Lists with fewer elements than the bg.parallelThreshold system
+ *  property (256 by default) are always done sequentially. The number of
+ *  threads in the pool is set by the bg.parallelism system property and
+ *  defaults to the number of processors; with one thread nothing is ever
+ *  done in parallel.
+ *  @author Brodie Vivio
+ */
+class Parallel {
+
+    /** The fewest elements a list must have to be done in parallel. */
+    static final int THRESHOLD = Integer.getInteger("bg.parallelThreshold", 256);
+    /** The pool that lists are done in parallel on. */
+    private static final ForkJoinPool POOL = new ForkJoinPool(
+	Math.max(Integer.getInteger("bg.parallelism",
+				    Runtime.getRuntime().availableProcessors()),
+		 1));
+
+    /** Returns true iff a list of SIZE elements should be done in
+     *  parallel. */
+    static boolean worthIt(int size) {
+	return size >= THRESHOLD && POOL.getParallelism() > 1;
+    }
+
+    /** Returns the results of FUNCTION applied to each element of LIST,
+     *  in the same order. If FUNCTION throws a RuntimeException for any
+     *  element, one such exception is thrown as it is. */
+    static <T, R> List<R> map(List<T> list,
+			      Function<? super T, ? extends R> function) {
+	Object[] results = new Object[list.size()];
+	if (worthIt(results.length)) {
+	    int grain = Math.max(results.length
+				 / (4 * POOL.getParallelism()), 1);
+	    MapTask<T> task = new MapTask<T>(list, function, results,
+					     0, results.length, grain);
+	    POOL.invoke(task);
+	    if (task._failure.get() != null) {
+		throw task._failure.get();
+	    }
+	} else {
+	    for (int i = 0; i < results.length; i++) {
+		results[i] = function.apply(list.get(i));
+	    }
+	}
+	@SuppressWarnings("unchecked")
+	List<R> mapped = (List<R>) Arrays.asList(results);
+	return mapped;
+    }
+
+
+    /** A MAPTASK applies a function to a range of the elements of a list,
+     *  splitting the range in half until it is no longer than a grain. The
+     *  first RuntimeException thrown is kept rather than passed to the
+     *  pool, which would otherwise wrap it. */
+    private static class MapTask<T> extends RecursiveAction {
+
+	/** The serialization version, since RecursiveAction is Serializable. */
+	private static final long serialVersionUID = 1L;
+
+	/** The list. */
+	private final List<T> _list;
+	/** The function applied to each element. */
+	private final Function<? super T, ?> _function;
+	/** Where the result for each element of _list is stored. */
+	private final Object[] _results;
+	/** The first index of my range. */
+	private final int _from;
+	/** The index just past my range. */
+	private final int _to;
+	/** The longest range that is not split. */
+	private final int _grain;
+	/** The first exception thrown by any task of the same map. */
+	private final AtomicReference<RuntimeException> _failure;
+
+	/** Creates a task applying FUNCTION to the elements of LIST from
+	 *  index FROM up to TO, storing the results in RESULTS and splitting
+	 *  ranges longer than GRAIN. */
+	MapTask(List<T> list, Function<? super T, ?> function,
+		Object[] results, int from, int to, int grain) {
+	    this(list, function, results, from, to, grain,
+		 new AtomicReference<RuntimeException>());
+	}
+
+	/** Creates a task as above that records exceptions in FAILURE. */
+	private MapTask(List<T> list, Function<? super T, ?> function,
+			Object[] results, int from, int to, int grain,
+			AtomicReference<RuntimeException> failure) {
+	    _list = list;
+	    _function = function;
+	    _results = results;
+	    _from = from;
+	    _to = to;
+	    _grain = grain;
+	    _failure = failure;
+	}
+
+	@Override
+	protected void compute() {
+	    if (_to - _from > _grain) {
+		int mid = (_from + _to) >>> 1;
+		invokeAll(new MapTask<T>(_list, _function, _results, _from,
+					 mid, _grain, _failure),
+			  new MapTask<T>(_list, _function, _results, mid, _to,
+					 _grain, _failure));
+		return;
+	    }
+	    try {
+		for (int i = _from; i < _to && _failure.get() == null; i++) {
+		    _results[i] = _function.apply(_list.get(i));
+		}
+	    } catch (RuntimeException e) {
+		_failure.compareAndSet(null, e);
+	    }
+	}
+
+    }
+
+}
@@ -0,0 +1,90 @@
+package bg;
+
+import java.util.Arrays;
+
+/** A PERCENTILE collects the amounts of a set of Items and finds the one
+ *  at a given percentile of them, measured by size whatever their sign as
+ *  in TopItems. The amounts are kept in a primitive array and the one
+ *  wanted is found by quickselect, in expected linear time, instead of
+ *  sorting them all. Percentiles are by nearest rank: the Pth percentile
+ *  of N amounts is the one at rank ceil(P / 100 * N) from the smallest.
+ *  @author Brodie Vivio
+ */
+class Percentile {
+
+    /** The amounts added so far, in no particular order. */
+    private long[] _amounts;
+    /** The number of amounts added. */
+    private int _count;
+
+    /** Creates a new empty Percentile with room for CAPACITY amounts. */
+    Percentile(int capacity) {
+	_amounts = new long[Math.max(capacity, 1)];
+    }
+
+    /** Adds AMOUNT. */
+    void add(long amount) {
+	if (_count == _amounts.length) {
+	    _amounts = Arrays.copyOf(_amounts, 2 * _count);
+	}
+	_amounts[_count++] = amount;
+    }
+
+    /** Returns the number of amounts added. */
+    int size() {
+	return _count;
+    }
+
+    /** Returns the amount at the PERCENT percentile of those added, where
+     *  0 < PERCENT <= 100. At least one amount must have been added. */
+    long get(double percent) {
+	int rank = (int) Math.ceil(percent / 100 * _count);
+	return select(Math.min(Math.max(rank, 1), _count) - 1);
+    }
+
+    /** Returns the amount that would be at index K if my amounts were
+     *  sorted by size, partially reordering them. */
+    private long select(int k) {
+	long[] a = _amounts;
+	int lo = 0;
+	int hi = _count - 1;
+	while (lo < hi) {
+	    long pivot = median(Math.abs(a[lo]), Math.abs(a[(lo + hi) >>> 1]),
+				Math.abs(a[hi]));
+	    int lt = lo;
+	    int gt = hi;
+	    int i = lo;
+	    while (i <= gt) {
+		long size = Math.abs(a[i]);
+		if (size < pivot) {
+		    swap(a, lt++, i++);
+		} else if (size > pivot) {
+		    swap(a, i, gt--);
+		} else {
+		    i++;
+		}
+	    }
+	    if (k < lt) {
+		hi = lt - 1;
+	    } else if (k > gt) {
+		lo = gt + 1;
+	    } else {
+		return a[k];
+	    }
+	}
+	return a[k];
+    }
+
+    /** Returns the median of X, Y and Z. */
+    private static long median(long x, long y, long z) {
+	return Math.max(Math.min(x, y), Math.min(Math.max(x, y), z));
+    }
+
+    /** Swaps A[I] and A[J]. */
+    private static void swap(long[] a, int i, int j) {
+	long t = a[i];
+	a[i] = a[j];
+	a[j] = t;
+    }
+
+}
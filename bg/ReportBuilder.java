@@ -0,0 +1,105 @@
+package bg;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+/** A REPORTBUILDER accumulates the text of a report in a StringBuilder
+ *  that can be cleared and reused, so that a report is written out in one
+ *  block instead of through many small printf calls. Amounts of money
+ *  are appended straight from their cents, and other numbers are written
+ *  as printf's %.Nf would write them in Locale.ROOT, so that every number
+ *  in a report uses '.' as its decimal separator whatever the locale.
+ *  @author Brodie Vivio
+ */
+class ReportBuilder {
+
+    /** The line separator, which is what %n and println write. */
+    private static final String NEWLINE = System.lineSeparator();
+    /** My text so far. */
+    private final StringBuilder _text;
+
+    /** Creates a new empty ReportBuilder. */
+    ReportBuilder() {
+	_text = new StringBuilder(1 << 12);
+    }
+
+    /** Appends S and returns me. */
+    ReportBuilder text(String s) {
+	_text.append(s);
+	return this;
+    }
+
+    /** Appends N spaces and returns me. */
+    ReportBuilder spaces(int n) {
+	for (int i = 0; i < n; i++) {
+	    _text.append(' ');
+	}
+	return this;
+    }
+
+    /** Appends the text of OTHER and returns me. */
+    ReportBuilder append(ReportBuilder other) {
+	_text.append(other._text);
+	return this;
+    }
+
+    /** Appends CENTS written as dollars with two decimal places and a
+     *  leading minus sign if it is negative, and returns me. */
+    ReportBuilder money(long cents) {
+	Money.append(_text, cents);
+	return this;
+    }
+
+    /** Appends CENTS written as an amount of dollars, as "$12.50" or
+     *  "-$12.50", and returns me. */
+    ReportBuilder dollars(long cents) {
+	if (cents < 0) {
+	    _text.append("-$");
+	    cents = -cents;
+	} else {
+	    _text.append('$');
+	}
+	Money.append(_text, cents);
+	return this;
+    }
+
+    /** Appends VALUE rounded to DECIMALS decimal places exactly as
+     *  printf's %.Nf does in Locale.ROOT with N equal to DECIMALS, and
+     *  returns me. */
+    ReportBuilder fixed(double value, int decimals) {
+	if (Double.isNaN(value) || Double.isInfinite(value)) {
+	    _text.append(value);
+	    return this;
+	}
+	if (Double.doubleToRawLongBits(value) < 0) {
+	    _text.append('-');
+	    value = -value;
+	}
+	_text.append(new BigDecimal(Double.toString(value))
+		     .setScale(decimals, RoundingMode.HALF_UP).toPlainString());
+	return this;
+    }
+
+    /** Ends the current line and returns me. */
+    ReportBuilder line() {
+	_text.append(NEWLINE);
+	return this;
+    }
+
+    /** Appends S, ends the line and returns me. */
+    ReportBuilder line(String s) {
+	return text(s).line();
+    }
+
+    /** Removes all of my text so that I can be reused. */
+    void clear() {
+	_text.setLength(0);
+    }
+
+    /** Returns my text. */
+    @Override
+    public String toString() {
+	return _text.toString();
+    }
+
+}
@@ -0,0 +1,116 @@
+package bg;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/** A RESULTCACHE holds the rendered text of recent reports and select
+ *  queries, keyed on their normalized statements, so that repeating one
+ *  skips both evaluating and formatting it. Once it holds CAPACITY
+ *  results the least recently used one is dropped.
+ *
+ *  Each result records what it depends on: a single month (for a month
+ *  report), the months containing a single category (for a category
+ *  report), or every month. When a month is added to or removed from
+ *  the budget, only the results that depend on it are dropped.
+ *  @author Brodie Vivio
+ */
+class ResultCache {
+
+    /** The most results a ResultCache holds. */
+    static final int CAPACITY = 64;
+
+    /** My results, least recently used first. */
+    private final LinkedHashMap<String, Result> _results;
+    /** The number of lookups that found a result. */
+    private long _hits;
+    /** The number of lookups that did not find a result. */
+    private long _misses;
+
+    /** Creates a new empty ResultCache. */
+    ResultCache() {
+	_results = new LinkedHashMap<String, Result>(16, 0.75f, true) {
+	    @Override
+	    protected boolean removeEldestEntry(Map.Entry<String, Result> e) {
+		return size() > CAPACITY;
+	    }
+	};
+    }
+
+    /** Returns the text of the result stored under KEY, or null if there
+     *  is none. */
+    synchronized String get(String key) {
+	Result result = _results.get(key);
+	if (result == null) {
+	    _misses++;
+	    return null;
+	}
+	_hits++;
+	return result._text;
+    }
+
+    /** Stores TEXT under KEY as a result that depends only on the month
+     *  named MONTH if MONTH is not null, or else only on the months
+     *  containing the category CAT if CAT is not null, or else on every
+     *  month. */
+    synchronized void put(String key, String month, String cat,
+			  String text) {
+	_results.put(key, new Result(month, cat, text));
+    }
+
+    /** Drops every result that depends on Month MONTH, which has just
+     *  been added to or removed from the budget. */
+    synchronized void invalidate(Month month) {
+	Iterator<Result> results = _results.values().iterator();
+	while (results.hasNext()) {
+	    Result result = results.next();
+	    if (result._month != null) {
+		if (result._month.equals(month.getName())) {
+		    results.remove();
+		}
+	    } else if (result._cat == null || month.containsCat(result._cat)) {
+		results.remove();
+	    }
+	}
+    }
+
+    /** Drops every result. */
+    synchronized void clear() {
+	_results.clear();
+    }
+
+    /** Returns the number of lookups that found a result. */
+    synchronized long getHits() {
+	return _hits;
+    }
+
+    /** Returns the number of lookups that did not find a result. */
+    synchronized long getMisses() {
+	return _misses;
+    }
+
+    /** Returns the number of results I hold. */
+    synchronized int size() {
+	return _results.size();
+    }
+
+    /** A RESULT is the text of one report or query along with what it
+     *  depends on. */
+    private static class Result {
+
+	/** The name of the only month I depend on, or null. */
+	private final String _month;
+	/** The only category whose months I depend on, or null. */
+	private final String _cat;
+	/** My text. */
+	private final String _text;
+
+	Result(String month, String cat, String text) {
+	    _month = month;
+	    _cat = cat;
+	    _text = text;
+	}
+
+    }
+
+}
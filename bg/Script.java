@@ -0,0 +1,61 @@
+package bg;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+
+/** A SCRIPT is a sequence of bgSQL statements read in full from a file or
+ *  pipe and split into words once, so that it can be run without a user
+ *  at the terminal. Blank lines and lines starting with '#' are skipped.
+ *  @author Brodie Vivio
+ */
+class Script {
+
+    /** My statements, each split into its words. */
+    private final List<String[]> _statements;
+
+    /** Creates a new Script holding the statements in STATEMENTS. */
+    private Script(List<String[]> statements) {
+	_statements = statements;
+    }
+
+    /** Returns the Script read from INPUT, which is read to its end but
+     *  not closed. */
+    static Script read(Reader input) throws IOException {
+	BufferedReader lines = new BufferedReader(input);
+	ArrayList<String[]> statements = new ArrayList<String[]>();
+	for (String line = lines.readLine(); line != null;
+	     line = lines.readLine()) {
+	    if (line.isBlank() || line.startsWith("#")) {
+		continue;
+	    }
+	    statements.add(line.split(" "));
+	}
+	return new Script(statements);
+    }
+
+    /** Executes my statements in order with INTERPRETER, without
+     *  prompts, until they run out or one of them ends the session. The
+     *  wall-clock time of each statement is printed to TIMINGS, unless it
+     *  is null. Returns the number of errors the statements caused. */
+    int run(CommandInterpreter interpreter, PrintStream timings) {
+	int errors = interpreter.getErrors();
+	for (String[] coms : _statements) {
+	    long start = System.nanoTime();
+	    interpreter.execute(coms);
+	    if (timings != null) {
+		timings.printf("%10.3f ms  %s%n",
+			       (System.nanoTime() - start) / 1e6,
+			       String.join(" ", coms));
+	    }
+	    if (interpreter.end()) {
+		break;
+	    }
+	}
+	return interpreter.getErrors() - errors;
+    }
+
+}
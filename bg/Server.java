@@ -0,0 +1,199 @@
+package bg;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.reflect.Method;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Scanner;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/** A SERVER answers bgSQL statements sent over TCP connections to a port
+ *  of the local host, so that several programs can query one loaded
+ *  Budget without each loading it again. Each connection is a session
+ *  with a read-only CommandInterpreter of its own over the shared Budget,
+ *  which the interpreter that loaded it may go on changing, for example
+ *  by watching a directory. Each statement reads a snapshot of it.
+ *
+ *  A client sends one statement per line, and each is answered with a
+ *  line holding the length in bytes of the statement's output, followed
+ *  by that output.
+ *
+ *  Sessions and statements run on virtual threads if this Java has them,
+ *  and on daemon threads of a pool otherwise. At most bg.serverSessions
+ *  sessions (64 by default) are served at once. A connection that finds
+ *  no room within bg.serverWait milliseconds (1000 by default) is told
+ *  the server is busy and closed, so that more load than the server can
+ *  take is turned away rather than queued without limit. A statement
+ *  that takes longer than bg.serverTimeout milliseconds (10000 by
+ *  default) is answered with an error and its session is closed, though
+ *  its room is only given up once the statement finishes. A session left
+ *  idle for bg.serverIdle milliseconds (300000 by default) is closed.
+ *  @author Brodie Vivio
+ */
+class Server {
+
+    /** The most sessions served at once. */
+    static final int SESSIONS = Integer.getInteger("bg.serverSessions", 64);
+    /** The longest a connection waits for room, in milliseconds. */
+    static final long WAIT = Long.getLong("bg.serverWait", 1000);
+    /** The longest a statement may take, in milliseconds. */
+    static final long TIMEOUT = Long.getLong("bg.serverTimeout", 10000);
+    /** The longest a session may wait for a statement, in milliseconds. */
+    static final int IDLE = Integer.getInteger("bg.serverIdle", 300000);
+
+    /** The Budget that sessions read. */
+    private final Budget _budget;
+    /** The socket that connections are accepted on. */
+    private final ServerSocket _socket;
+    /** The room for sessions: one permit per session being served. */
+    private final Semaphore _room;
+    /** The threads that sessions and their statements run on. */
+    private final ExecutorService _threads;
+
+    /** Creates a new Server of BUDGET listening on port PORT of the local
+     *  host, or on any free port if PORT is 0. It serves nothing until it
+     *  is run. */
+    Server(Budget budget, int port) throws IOException {
+	_budget = budget;
+	_socket = new ServerSocket(port, SESSIONS,
+				   InetAddress.getLoopbackAddress());
+	_room = new Semaphore(SESSIONS);
+	_threads = threads();
+    }
+
+    /** Returns an ExecutorService that runs each task on a new virtual
+     *  thread if this Java has them, or on a pool of daemon threads. The
+     *  virtual threads are found by reflection so that budgetGuide still
+     *  builds and runs on Java 17. */
+    private static ExecutorService threads() {
+	try {
+	    Method virtual =
+		Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+	    return (ExecutorService) virtual.invoke(null);
+	} catch (ReflectiveOperationException e) {
+	    return Executors.newCachedThreadPool(r -> {
+		    Thread thread = new Thread(r, "bg-session");
+		    thread.setDaemon(true);
+		    return thread;
+		});
+	}
+    }
+
+    /** Returns the port I listen on. */
+    int getPort() {
+	return _socket.getLocalPort();
+    }
+
+    /** Accepts and serves connections until I am closed. */
+    void run() throws IOException {
+	while (!_socket.isClosed()) {
+	    Socket socket;
+	    try {
+		socket = _socket.accept();
+	    } catch (IOException e) {
+		if (_socket.isClosed()) {
+		    return;
+		}
+		throw e;
+	    }
+	    _threads.execute(() -> serve(socket));
+	}
+    }
+
+    /** Stops accepting connections. Sessions already served go on. */
+    void close() throws IOException {
+	_socket.close();
+    }
+
+    /** Serves the connection SOCKET as a session, if there is room for it
+     *  in time, and closes it. */
+    private void serve(Socket socket) {
+	boolean admitted;
+	try {
+	    admitted = _room.tryAcquire(WAIT, TimeUnit.MILLISECONDS);
+	} catch (InterruptedException e) {
+	    admitted = false;
+	}
+	boolean release = admitted;
+	try (socket) {
+	    OutputStream out = new BufferedOutputStream(socket.getOutputStream());
+	    if (!admitted) {
+		reply(out, "ERROR: server busy\n");
+		return;
+	    }
+	    socket.setSoTimeout(IDLE);
+	    BufferedReader in = new BufferedReader(new InputStreamReader(
+		socket.getInputStream(), StandardCharsets.UTF_8));
+	    ByteArrayOutputStream output = new ByteArrayOutputStream();
+	    CommandInterpreter session = new CommandInterpreter(
+		new Scanner(""), new PrintStream(output, false,
+						 StandardCharsets.UTF_8),
+		_budget);
+	    for (String line = in.readLine(); line != null;
+		 line = in.readLine()) {
+		if (line.isBlank()) {
+		    reply(out, "");
+		    continue;
+		}
+		String[] coms = line.split(" ");
+		CompletableFuture<Void> statement = CompletableFuture.runAsync(
+		    () -> session.execute(coms), _threads);
+		try {
+		    statement.get(TIMEOUT, TimeUnit.MILLISECONDS);
+		} catch (TimeoutException | InterruptedException e) {
+		    release = false;
+		    statement.whenComplete((result, failure) -> _room.release());
+		    if (e instanceof TimeoutException) {
+			reply(out, "ERROR: statement timed out\n");
+		    }
+		    return;
+		} catch (ExecutionException e) {
+		    reply(out, "ERROR: statement failed\n");
+		    return;
+		}
+		reply(out, output.toByteArray());
+		output.reset();
+		if (session.end()) {
+		    return;
+		}
+	    }
+	} catch (IOException e) {
+	    /* The client went away or stayed idle too long, so there is no
+	       one left to answer. */
+	} finally {
+	    if (release) {
+		_room.release();
+	    }
+	}
+    }
+
+    /** Sends TEXT to OUT as the answer to a statement. */
+    private static void reply(OutputStream out, String text)
+	throws IOException {
+	reply(out, text.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /** Sends the bytes ANSWER to OUT as the answer to a statement,
+     *  preceded by a line holding their number. */
+    private static void reply(OutputStream out, byte[] answer)
+	throws IOException {
+	out.write((answer.length + "\n").getBytes(StandardCharsets.US_ASCII));
+	out.write(answer);
+	out.flush();
+    }
+
+}
@@ -0,0 +1,278 @@
+package bg;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+/** A SNAPSHOT is a binary .bg file holding a whole Budget, so that it can
+ *  be loaded again without re-parsing the .bgi files it came from. All
+ *  numbers are big-endian and every String is written as an int length
+ *  followed by that many bytes of UTF-8. A snapshot file is laid out as:
+ *
+ *    header:  MAGIC, VERSION, number of months (int)
+ *    blocks:  one block per month, holding the month's dictionary of item
+ *             names (count, then the names) and, for each of its
+ *             categories in order, the number of items (int) followed by
+ *             the items' dates (ints), amounts in cents (longs) and name
+ *             indices (ints)
+ *    index:   for each month, its name, number of days, the offset and
+ *             length of its block (long, int), its total in cents (long)
+ *             and number of categories (int), then for each category its
+ *             name, number of items (int) and total in cents (long)
+ *    trailer: the offset of the index (long)
+ *
+ *  Since the index holds every month's totals and the position of its
+ *  block, a single month can be read from the file without reading any
+ *  of the others, which is how snapshots are loaded lazily. Snapshots
+ *  are limited to 2GB.
+ *  @author Brodie Vivio
+ */
+class Snapshot {
+
+    /** The first four bytes of every snapshot file, "BGSN". */
+    static final int MAGIC = 0x4247534e;
+    /** The version of the snapshot format written by this class. */
+    static final int VERSION = 1;
+
+    /** Writes all of the Months of BUDGET to the file FILENAME. The
+     *  snapshot is written to a hidden file next to it and then moved over
+     *  it, so a failed write leaves any earlier snapshot in FILENAME as it
+     *  was. */
+    static void write(Budget budget, String fileName) throws IOException {
+	Path path = Paths.get(fileName).toAbsolutePath();
+	Path temp = path.resolveSibling("." + path.getFileName() + ".tmp");
+	try {
+	    write(budget, temp);
+	    Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING,
+		       StandardCopyOption.ATOMIC_MOVE);
+	} finally {
+	    Files.deleteIfExists(temp);
+	}
+    }
+
+    /** Writes all of the Months of BUDGET to the file PATH. */
+    private static void write(Budget budget, Path path) throws IOException {
+	List<Month> months = budget.getMonths();
+	long[] offsets = new long[months.size()];
+	int[] lengths = new int[months.size()];
+	try (DataOutputStream out = new DataOutputStream(
+		 new BufferedOutputStream(Files.newOutputStream(path)))) {
+	    out.writeInt(MAGIC);
+	    out.writeInt(VERSION);
+	    out.writeInt(months.size());
+	    for (int m = 0; m < months.size(); m++) {
+		offsets[m] = out.size();
+		writeBlock(months.get(m), out);
+		lengths[m] = (int) (out.size() - offsets[m]);
+	    }
+	    long indexOffset = out.size();
+	    for (int m = 0; m < months.size(); m++) {
+		Month month = months.get(m);
+		writeString(month.getName(), out);
+		out.writeInt(month.getDays());
+		out.writeLong(offsets[m]);
+		out.writeInt(lengths[m]);
+		out.writeLong(month.getTotal());
+		Set<String> cats = month.getCats();
+		out.writeInt(cats.size());
+		for (String cat : cats) {
+		    Category items = month.getCategory(cat);
+		    writeString(cat, out);
+		    out.writeInt(items.size());
+		    out.writeLong(items.getTotal());
+		}
+	    }
+	    out.writeLong(indexOffset);
+	}
+    }
+
+    /** Reads the snapshot file FILENAME and returns its Months in the
+     *  order they were written. If LAZY, only the index is read and each
+     *  Month reads its own block on first use. Throws an IOException if
+     *  the file is not a snapshot this class can read. */
+    static List<Month> read(String fileName, boolean lazy)
+	throws IOException {
+	long modified = new File(fileName).lastModified();
+	try (FileChannel channel = FileChannel.open(Paths.get(fileName),
+						    StandardOpenOption.READ)) {
+	    MappedByteBuffer buffer =
+		channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+	    try {
+		if (buffer.getInt(0) != MAGIC) {
+		    throw new IOException("not a budget snapshot");
+		}
+		if (buffer.getInt(4) != VERSION) {
+		    throw new IOException("unsupported snapshot version");
+		}
+		int numMonths = buffer.getInt(8);
+		buffer.position((int) buffer.getLong(buffer.limit() - 8));
+		ArrayList<Month> months = new ArrayList<Month>(numMonths);
+		for (int m = 0; m < numMonths; m++) {
+		    String name = readString(buffer);
+		    int days = buffer.getInt();
+		    long offset = buffer.getLong();
+		    int length = buffer.getInt();
+		    buffer.getLong();
+		    String[] cats = new String[buffer.getInt()];
+		    if (lazy) {
+			Month month = new Month(name, days,
+			    new BlockSource(fileName, offset, length, modified,
+					    channel.size()));
+			for (int c = 0; c < cats.length; c++) {
+			    month.addCat(new Category(readString(buffer),
+				buffer.getInt(), buffer.getLong()));
+			}
+			months.add(month);
+			continue;
+		    }
+		    for (int c = 0; c < cats.length; c++) {
+			cats[c] = readString(buffer);
+			buffer.getInt();
+			buffer.getLong();
+		    }
+		    int indexPos = buffer.position();
+		    buffer.position((int) offset);
+		    months.add(readBlock(name, days, cats, buffer));
+		    buffer.position(indexPos);
+		}
+		return months;
+	    } catch (RuntimeException e) {
+		throw new IOException("corrupt budget snapshot");
+	    }
+	}
+    }
+
+    /** Writes the item names and Categories of MONTH to OUT. */
+    private static void writeBlock(Month month, DataOutputStream out)
+	throws IOException {
+	out.writeInt(month.getItemNameCount());
+	for (int i = 0; i < month.getItemNameCount(); i++) {
+	    writeString(month.getItemName(i), out);
+	}
+	for (String cat : month.getCats()) {
+	    Category items = month.getCategory(cat);
+	    out.writeInt(items.size());
+	    for (int i = 0; i < items.size(); i++) {
+		out.writeInt(items.getDate(i));
+	    }
+	    for (int i = 0; i < items.size(); i++) {
+		out.writeLong(items.getAmount(i));
+	    }
+	    for (int i = 0; i < items.size(); i++) {
+		out.writeInt(items.getNameId(i));
+	    }
+	}
+    }
+
+    /** Returns the Month named NAME with DAYS days and the categories
+     *  CATS, reading its item names and Items from the block at the
+     *  current position of BUFFER. */
+    private static Month readBlock(String name, int days, String[] cats,
+				   ByteBuffer buffer) {
+	Month month = new Month(name, days);
+	readBlock(month, cats, buffer);
+	return month;
+    }
+
+    /** Reads the item names and Items of the categories CATS of MONTH
+     *  from the block at the current position of BUFFER into MONTH. */
+    private static void readBlock(Month month, String[] cats,
+				  ByteBuffer buffer) {
+	int numNames = buffer.getInt();
+	for (int i = 0; i < numNames; i++) {
+	    month.addItemName(readString(buffer));
+	}
+	for (String cat : cats) {
+	    int size = buffer.getInt();
+	    int[] dates = new int[size];
+	    long[] amounts = new long[size];
+	    int[] nameIds = new int[size];
+	    buffer.asIntBuffer().get(dates);
+	    buffer.position(buffer.position() + 4 * size);
+	    buffer.asLongBuffer().get(amounts);
+	    buffer.position(buffer.position() + 8 * size);
+	    buffer.asIntBuffer().get(nameIds);
+	    buffer.position(buffer.position() + 4 * size);
+	    month.addCat(new Category(cat, dates, amounts, nameIds));
+	}
+    }
+
+    /** Writes the String S to OUT as its length and UTF-8 bytes. */
+    private static void writeString(String s, DataOutputStream out)
+	throws IOException {
+	byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+	out.writeInt(bytes.length);
+	out.write(bytes);
+    }
+
+    /** Reads a String written by writeString from BUFFER. */
+    private static String readString(ByteBuffer buffer) {
+	byte[] bytes = new byte[buffer.getInt()];
+	buffer.get(bytes);
+	return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+
+    /** A BLOCKSOURCE reads the Items of a lazily loaded Month from its
+     *  block of a snapshot file, as long as the file has not been
+     *  replaced since it was loaded. */
+    static class BlockSource implements MonthSource {
+
+	/** The name of my snapshot file. */
+	private final String _fileName;
+	/** The offset of my block in the file. */
+	private final long _offset;
+	/** The length of my block in bytes. */
+	private final int _length;
+	/** The modification time of the file when it was loaded. */
+	private final long _modified;
+	/** The size in bytes of the file when it was loaded. */
+	private final long _size;
+
+	/** Creates a new BlockSource for the block of LENGTH bytes at
+	 *  OFFSET in the snapshot file FILENAME, which had modification time
+	 *  MODIFIED and SIZE bytes when it was loaded. */
+	BlockSource(String fileName, long offset, int length, long modified,
+		    long size) {
+	    _fileName = fileName;
+	    _offset = offset;
+	    _length = length;
+	    _modified = modified;
+	    _size = size;
+	}
+
+	public void readItems(Month month) throws IOException {
+	    File file = new File(_fileName);
+	    if (file.lastModified() != _modified || file.length() != _size) {
+		throw new IOException(String.format(
+		    "file %s has changed since it was loaded", _fileName));
+	    }
+	    ByteBuffer block = ByteBuffer.allocate(_length);
+	    try (FileChannel channel = FileChannel.open(Paths.get(_fileName),
+						    StandardOpenOption.READ)) {
+		while (block.hasRemaining()) {
+		    if (channel.read(block, _offset + block.position()) < 0) {
+			throw new IOException("corrupt budget snapshot");
+		    }
+		}
+	    }
+	    block.flip();
+	    readBlock(month, month.getCats().toArray(new String[0]), block);
+	}
+
+    }
+
+}
@@ -0,0 +1,219 @@
+package bg;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/** STATS holds the counters and latency histograms kept on the hot paths
+ *  of budgetGuide: parsing .bgi files, filtering months for select
+ *  queries, computing totals and rendering reports. They are shown by
+ *  the 'print stats' command.
+ *
+ *  Statistics are only kept if the bg.stats system property is true.
+ *  Otherwise ENABLED is a false constant, every recording method returns
+ *  at once and the JIT compiles the calls away, so the calls can stay in
+ *  place. If the bg.statsInterval system property is also set to a
+ *  number of seconds, a one-line summary is printed to the standard error
+ *  that often.
+ *  @author Brodie Vivio
+ */
+class Stats {
+
+    /** True iff statistics are kept. */
+    static final boolean ENABLED = Boolean.getBoolean("bg.stats");
+    /** The number of seconds between summary lines, or 0 for none. */
+    private static final long LOG_INTERVAL =
+	Long.getLong("bg.statsInterval", 0);
+
+    /** The number of .bgi files parsed. */
+    private static final LongAdder _files = new LongAdder();
+    /** The number of bytes in the .bgi files parsed. */
+    private static final LongAdder _bytes = new LongAdder();
+    /** The number of items parsed. */
+    private static final LongAdder _items = new LongAdder();
+    /** The time taken to parse each .bgi file. */
+    private static final Histogram _parseTimes = new Histogram();
+    /** The number of months scanned by select filters. */
+    private static final LongAdder _monthsScanned = new LongAdder();
+    /** The number of conditions evaluated by select filters. */
+    private static final LongAdder _conditions = new LongAdder();
+    /** The number of months rejected before all conditions were tested. */
+    private static final LongAdder _shortCircuits = new LongAdder();
+    /** The time taken by each select filter. */
+    private static final Histogram _filterTimes = new Histogram();
+    /** The number of totals computed for months and budgets. */
+    private static final LongAdder _aggregations = new LongAdder();
+    /** The number of characters of reports rendered. */
+    private static final LongAdder _chars = new LongAdder();
+    /** The time taken to render each report. */
+    private static final Histogram _renderTimes = new Histogram();
+
+    static {
+	if (ENABLED && LOG_INTERVAL > 0) {
+	    ScheduledExecutorService logger =
+		Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread thread = new Thread(r, "bg-stats");
+			thread.setDaemon(true);
+			return thread;
+		    });
+	    logger.scheduleAtFixedRate(() -> System.err.println(line()),
+				       LOG_INTERVAL, LOG_INTERVAL,
+				       TimeUnit.SECONDS);
+	}
+    }
+
+    /** Returns the time to pass as START to the other methods, or 0 if
+     *  statistics are not kept. */
+    static long start() {
+	return ENABLED ? System.nanoTime() : 0;
+    }
+
+    /** Records that a .bgi file of BYTES bytes holding ITEMS items was
+     *  parsed, starting at time START. */
+    static void parsed(long bytes, long items, long start) {
+	if (ENABLED) {
+	    _files.increment();
+	    _bytes.add(bytes);
+	    _items.add(items);
+	    _parseTimes.record(System.nanoTime() - start);
+	}
+    }
+
+    /** Records that a select filter starting at time START scanned
+     *  MONTHS months, evaluating CONDITIONS conditions and rejecting
+     *  SHORTCIRCUITS months before testing all of its conditions. */
+    static void filtered(long months, long conditions, long shortCircuits,
+			 long start) {
+	if (ENABLED) {
+	    _monthsScanned.add(months);
+	    _conditions.add(conditions);
+	    _shortCircuits.add(shortCircuits);
+	    _filterTimes.record(System.nanoTime() - start);
+	}
+    }
+
+    /** Records that a total was computed. */
+    static void aggregated() {
+	if (ENABLED) {
+	    _aggregations.increment();
+	}
+    }
+
+    /** Records that a report of CHARS characters was rendered, starting
+     *  at time START. */
+    static void rendered(long chars, long start) {
+	if (ENABLED) {
+	    _chars.add(chars);
+	    _renderTimes.record(System.nanoTime() - start);
+	}
+    }
+
+    /** Returns all my statistics, one per line. */
+    static String summary() {
+	if (!ENABLED) {
+	    return String.format("statistics are off; run budgetGuide with"
+				 + " -Dbg.stats=true to keep them%n");
+	}
+	double parseSecs = _parseTimes.getSum() / 1e9;
+	return String.format(
+	    "files parsed: %d (%d bytes, %d items)%n"
+	    + "parse time per file: %s%n"
+	    + "parse throughput: %.1f MB/s, %.0f items/s%n"
+	    + "filters: %d (%d months scanned, %d conditions evaluated,"
+	    + " %d short-circuits)%n"
+	    + "filter time: %s%n"
+	    + "totals computed: %d%n"
+	    + "reports rendered: %d (%d characters)%n"
+	    + "render time: %s%n",
+	    _files.sum(), _bytes.sum(), _items.sum(), _parseTimes,
+	    parseSecs == 0 ? 0 : _bytes.sum() / 1e6 / parseSecs,
+	    parseSecs == 0 ? 0 : _items.sum() / parseSecs,
+	    _filterTimes.getCount(), _monthsScanned.sum(), _conditions.sum(),
+	    _shortCircuits.sum(), _filterTimes, _aggregations.sum(),
+	    _renderTimes.getCount(), _chars.sum(), _renderTimes);
+    }
+
+    /** Returns a one-line summary of my statistics. */
+    static String line() {
+	return String.format("bg stats: %d files, %d items, %d filters,"
+			     + " %d totals, %d reports",
+			     _files.sum(), _items.sum(), _filterTimes.getCount(),
+			     _aggregations.sum(), _renderTimes.getCount());
+    }
+
+
+    /** A HISTOGRAM counts durations in buckets whose bounds are powers
+     *  of two nanoseconds, which is enough to estimate percentiles to
+     *  within a factor of two while recording in constant time. */
+    static class Histogram {
+
+	/** The number of durations in each bucket; bucket B holds those
+	 *  below 2^B nanoseconds but not below 2^(B-1). */
+	private final LongAdder[] _buckets;
+	/** The sum of all durations. */
+	private final LongAdder _sum;
+	/** The longest duration. */
+	private final LongAccumulator _max;
+
+	Histogram() {
+	    _buckets = new LongAdder[64];
+	    for (int b = 0; b < _buckets.length; b++) {
+		_buckets[b] = new LongAdder();
+	    }
+	    _sum = new LongAdder();
+	    _max = new LongAccumulator(Math::max, 0);
+	}
+
+	/** Records a duration of NANOS nanoseconds. */
+	void record(long nanos) {
+	    nanos = Math.max(nanos, 0);
+	    _buckets[64 - Long.numberOfLeadingZeros(nanos)].increment();
+	    _sum.add(nanos);
+	    _max.accumulate(nanos);
+	}
+
+	/** Returns the number of durations recorded. */
+	long getCount() {
+	    long count = 0;
+	    for (LongAdder bucket : _buckets) {
+		count += bucket.sum();
+	    }
+	    return count;
+	}
+
+	/** Returns the sum of the durations recorded in nanoseconds. */
+	long getSum() {
+	    return _sum.sum();
+	}
+
+	/** Returns an upper bound in nanoseconds on the FRACTION quantile
+	 *  of the COUNT durations recorded. */
+	long quantile(double fraction, long count) {
+	    long seen = 0;
+	    for (int b = 0; b < _buckets.length; b++) {
+		seen += _buckets[b].sum();
+		if (seen >= fraction * count) {
+		    return b == 0 ? 0 : Math.min(1L << b, _max.get());
+		}
+	    }
+	    return _max.get();
+	}
+
+	@Override
+	public String toString() {
+	    long count = getCount();
+	    if (count == 0) {
+		return "none";
+	    }
+	    return String.format("count %d, mean %.3f ms, p50 %.3f ms,"
+				 + " p99 %.3f ms, max %.3f ms", count,
+				 getSum() / 1e6 / count,
+				 quantile(0.5, count) / 1e6,
+				 quantile(0.99, count) / 1e6, _max.get() / 1e6);
+	}
+
+    }
+
+}
@@ -0,0 +1,125 @@
+package bg;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Set;
+
+/** A SUMMARY is a small .bgx sidecar file kept next to a .bgi file,
+ *  holding everything about the month in it except its items: its name,
+ *  number of days, the position of its first item line and the number
+ *  and total of the items in each of its categories. It also records the
+ *  modification time and size of the .bgi file it was made from, and is
+ *  only used while those still match. A Month made from a Summary knows
+ *  its totals, so totals-only queries never read the .bgi file; its items
+ *  are read lazily from the .bgi file if they are ever needed.
+ *
+ *  A summary file holds, in order: MAGIC, VERSION, the modification time
+ *  and size of the .bgi file (longs), the month's name (UTF), number of
+ *  days (int), the byte offset and line number of its first item line
+ *  (long, int), its number of categories (int) and then, for each
+ *  category, its name (UTF), number of items (int) and total in cents
+ *  (long).
+ *  @author Brodie Vivio
+ */
+class Summary {
+
+    /** The first four bytes of every summary file, "BGX1". */
+    static final int MAGIC = 0x42475831;
+    /** The version of the summary format written by this class. */
+    static final int VERSION = 1;
+
+    /** Returns the name of the summary file for the .bgi file BGIFILE. */
+    static String fileName(String bgiFile) {
+	if (bgiFile.endsWith(".bgi")) {
+	    return bgiFile.substring(0, bgiFile.length() - 4) + ".bgx";
+	}
+	return bgiFile + ".bgx";
+    }
+
+    /** Writes the summary file for MONTH, which was read in full from the
+     *  .bgi file BGIFILE. BGIFILE had the modification time MODIFIED and
+     *  SIZE bytes when it was read, and its first item line was line
+     *  LINENUM, starting at byte OFFSET. */
+    static void write(String bgiFile, long modified, long size, Month month,
+		      long offset, int lineNum) throws IOException {
+	Set<String> cats = month.getCats();
+	try (DataOutputStream out = new DataOutputStream(
+		 new BufferedOutputStream(
+		     new FileOutputStream(fileName(bgiFile))))) {
+	    out.writeInt(MAGIC);
+	    out.writeInt(VERSION);
+	    out.writeLong(modified);
+	    out.writeLong(size);
+	    out.writeUTF(month.getName());
+	    out.writeInt(month.getDays());
+	    out.writeLong(offset);
+	    out.writeInt(lineNum);
+	    out.writeInt(cats.size());
+	    for (String cat : cats) {
+		out.writeUTF(cat);
+		out.writeInt(month.getCategory(cat).size());
+		out.writeLong(month.getTotal(cat));
+	    }
+	}
+    }
+
+    /** Returns a lazily loaded Month made from the summary file of the
+     *  .bgi file BGIFILE, or null if there is no summary file or it is
+     *  out of date or unreadable. */
+    static Month read(String bgiFile) {
+	File bgi = new File(bgiFile);
+	File bgx = new File(fileName(bgiFile));
+	if (!bgx.isFile()) {
+	    return null;
+	}
+	try (DataInputStream in = new DataInputStream(
+		 new BufferedInputStream(new FileInputStream(bgx)))) {
+	    long modified = bgi.lastModified();
+	    long size = bgi.length();
+	    if (in.readInt() != MAGIC || in.readInt() != VERSION
+		|| in.readLong() != modified || in.readLong() != size) {
+		return null;
+	    }
+	    String name = in.readUTF();
+	    int days = in.readInt();
+	    long offset = in.readLong();
+	    int lineNum = in.readInt();
+	    Month month = new Month(name, days,
+		new BGIReader.ItemSource(bgiFile, offset, lineNum, modified,
+					 size));
+	    int numCats = in.readInt();
+	    for (int c = 0; c < numCats; c++) {
+		month.addCat(new Category(in.readUTF(), in.readInt(),
+					  in.readLong()));
+	    }
+	    return month;
+	} catch (IOException e) {
+	    return null;
+	}
+    }
+
+    /** Returns a lazily loaded Month with the same name, days and
+     *  category totals as MONTH, which was read in full from the .bgi
+     *  file BGIFILE, whose first item line was line LINENUM, starting at
+     *  byte OFFSET. BGIFILE had the modification time MODIFIED and SIZE
+     *  bytes when it was read. The returned Month does not hold MONTH's
+     *  items. */
+    static Month of(String bgiFile, Month month, long offset, int lineNum,
+		    long modified, long size) {
+	Month summary = new Month(month.getName(), month.getDays(),
+	    new BGIReader.ItemSource(bgiFile, offset, lineNum, modified,
+				     size));
+	for (String cat : month.getCats()) {
+	    Category items = month.getCategory(cat);
+	    summary.addCat(new Category(cat, items.size(), items.getTotal()));
+	}
+	return summary;
+    }
+
+}
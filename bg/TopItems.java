@@ -0,0 +1,145 @@
+package bg;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/** A TOPITEMS keeps the N largest of a stream of Items, measured by the
+ *  size of their amounts whatever their sign, so that the largest
+ *  expenses and deposits can be found in one pass over millions of Items
+ *  while holding only N of them. Of Items of the same size, the one
+ *  offered first ranks higher.
+ *
+ *  The Items kept are in a bounded min-heap of primitives: each is stored
+ *  as its size and a reference packing the category of a Month it came
+ *  from with its index there, so that offering an Item allocates
+ *  nothing. The heap's root is the smallest Item kept, which is the one
+ *  replaced when a larger Item is offered once N are kept.
+ *  @author Brodie Vivio
+ */
+class TopItems {
+
+    /** The most Items the heap has room for before it first grows. */
+    private static final int INITIAL_CAPACITY = 1024;
+
+    /** The number of Items I keep. */
+    private final int _limit;
+    /** The sizes of the amounts of the Items in my heap. */
+    private long[] _sizes;
+    /** The references of the Items in my heap; the high 32 bits are the
+     *  index in _months and _cats of their category, and the low 32 bits
+     *  their index in it. */
+    private long[] _refs;
+    /** The number of Items in my heap. */
+    private int _count;
+    /** The Month of each category that Items were offered from. */
+    private final ArrayList<Month> _months;
+    /** The name of each category that Items were offered from. */
+    private final ArrayList<String> _cats;
+
+    /** Creates a new TopItems keeping the LIMIT largest Items offered,
+     *  which must be positive. */
+    TopItems(int limit) {
+	_limit = limit;
+	_sizes = new long[Math.min(limit, INITIAL_CAPACITY)];
+	_refs = new long[_sizes.length];
+	_months = new ArrayList<Month>();
+	_cats = new ArrayList<String>();
+    }
+
+    /** Returns the number that identifies category CAT of MONTH when
+     *  offering its Items. */
+    int source(Month month, String cat) {
+	_months.add(month);
+	_cats.add(cat);
+	return _months.size() - 1;
+    }
+
+    /** Offers the Item at index I of the category numbered SOURCE, whose
+     *  amount is AMOUNT. */
+    void offer(int source, int i, long amount) {
+	long size = Math.abs(amount);
+	long ref = (long) source << 32 | i;
+	if (_count < _limit) {
+	    if (_count == _sizes.length) {
+		int capacity = (int) Math.min(2L * _count, _limit);
+		_sizes = Arrays.copyOf(_sizes, capacity);
+		_refs = Arrays.copyOf(_refs, capacity);
+	    }
+	    int child = _count++;
+	    while (child > 0) {
+		int parent = (child - 1) >>> 1;
+		if (!below(size, ref, _sizes[parent], _refs[parent])) {
+		    break;
+		}
+		_sizes[child] = _sizes[parent];
+		_refs[child] = _refs[parent];
+		child = parent;
+	    }
+	    _sizes[child] = size;
+	    _refs[child] = ref;
+	} else if (below(_sizes[0], _refs[0], size, ref)) {
+	    siftDown(size, ref, _count);
+	}
+    }
+
+    /** Puts the Item with size SIZE and reference REF at the root of the
+     *  first COUNT entries of my heap, replacing the root, and moves it
+     *  down to its place. */
+    private void siftDown(long size, long ref, int count) {
+	int parent = 0;
+	while (true) {
+	    int child = 2 * parent + 1;
+	    if (child >= count) {
+		break;
+	    }
+	    if (child + 1 < count
+		&& below(_sizes[child + 1], _refs[child + 1],
+			 _sizes[child], _refs[child])) {
+		child++;
+	    }
+	    if (!below(_sizes[child], _refs[child], size, ref)) {
+		break;
+	    }
+	    _sizes[parent] = _sizes[child];
+	    _refs[parent] = _refs[child];
+	    parent = child;
+	}
+	_sizes[parent] = size;
+	_refs[parent] = ref;
+    }
+
+    /** Returns true iff the Item with size SIZE1 and reference REF1 ranks
+     *  below the one with size SIZE2 and reference REF2. */
+    private static boolean below(long size1, long ref1, long size2,
+				 long ref2) {
+	return size1 < size2 || size1 == size2 && ref1 > ref2;
+    }
+
+    /** Outputs the Items I kept to OUT, largest first, with their ranks,
+     *  months, categories, dates and names. Empties my heap. */
+    void report(ReportBuilder out) {
+	int count = _count;
+	for (int last = count - 1; last > 0; last--) {
+	    long size = _sizes[last];
+	    long ref = _refs[last];
+	    _sizes[last] = _sizes[0];
+	    _refs[last] = _refs[0];
+	    siftDown(size, ref, last);
+	}
+	_count = 0;
+	out.line("query results:").line();
+	for (int r = 0; r < count; r++) {
+	    int source = (int) (_refs[r] >>> 32);
+	    int i = (int) _refs[r];
+	    Month month = _months.get(source);
+	    Category items = month.getCategory(_cats.get(source));
+	    out.text("  ").text(Integer.toString(r + 1)).text(". ")
+		.text(month.getName()).text(", ").text(_cats.get(source))
+		.text(", day ").text(Integer.toString(items.getDate(i)))
+		.text(", ").text(month.getItemName(items.getNameId(i)))
+		.text(": ").dollars(items.getAmount(i)).line();
+	}
+	out.line();
+    }
+
+}
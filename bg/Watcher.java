@@ -0,0 +1,115 @@
+package bg;
+
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/** A WATCHER follows a directory on a thread of its own and passes the
+ *  files in it that were created, changed or deleted to a handler, a
+ *  batch at a time, so that only those files need to be read again. Only
+ *  files accepted by a filter are passed on.
+ *
+ *  Files are often written in several pieces, each of which is reported
+ *  as a change. A batch is therefore only handed over once no change has
+ *  been reported for a settling delay, set in milliseconds by the
+ *  bg.watchDelay system property (200 by default), and holds each file
+ *  once however often it changed. If changes were lost because too many
+ *  came at once, every file of the directory is passed on.
+ *  @author Brodie Vivio
+ */
+class Watcher implements Runnable {
+
+    /** The time in milliseconds without changes after which a batch is
+     *  handed over. */
+    static final long DELAY = Long.getLong("bg.watchDelay", 200);
+
+    /** The directory I watch. */
+    private final Path _dir;
+    /** The filter that files must pass to be handed over. */
+    private final FilenameFilter _filter;
+    /** What is done with each batch of changed files. */
+    private final Consumer<Set<Path>> _handler;
+    /** The service reporting the changes to _dir. */
+    private final WatchService _service;
+
+    /** Creates a new Watcher of the directory DIR that passes the files
+     *  accepted by FILTER that change to HANDLER. It does nothing until it
+     *  is started. */
+    Watcher(Path dir, FilenameFilter filter, Consumer<Set<Path>> handler)
+	throws IOException {
+	_dir = dir;
+	_filter = filter;
+	_handler = handler;
+	_service = dir.getFileSystem().newWatchService();
+	dir.register(_service, StandardWatchEventKinds.ENTRY_CREATE,
+		     StandardWatchEventKinds.ENTRY_MODIFY,
+		     StandardWatchEventKinds.ENTRY_DELETE);
+    }
+
+    /** Starts watching on a new daemon thread. */
+    void start() {
+	Thread thread = new Thread(this, "bg-watch");
+	thread.setDaemon(true);
+	thread.start();
+    }
+
+    /** Stops watching. No batch is handed over after this returns, except
+     *  one already being handled. */
+    void stop() {
+	try {
+	    _service.close();
+	} catch (IOException e) {
+	    /* The service is unusable either way. */
+	}
+    }
+
+    @Override
+    public void run() {
+	try {
+	    while (true) {
+		LinkedHashSet<Path> changed = new LinkedHashSet<Path>();
+		WatchKey key = _service.take();
+		while (key != null) {
+		    collect(key, changed);
+		    key = _service.poll(DELAY, TimeUnit.MILLISECONDS);
+		}
+		if (!changed.isEmpty()) {
+		    _handler.accept(changed);
+		}
+	    }
+	} catch (ClosedWatchServiceException | InterruptedException e) {
+	    return;
+	}
+    }
+
+    /** Adds the files whose changes KEY reports to CHANGED and makes KEY
+     *  ready to report more. */
+    private void collect(WatchKey key, Set<Path> changed) {
+	for (WatchEvent<?> event : key.pollEvents()) {
+	    if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+		String[] names = _dir.toFile().list(_filter);
+		if (names != null) {
+		    for (String name : names) {
+			changed.add(_dir.resolve(name));
+		    }
+		}
+		continue;
+	    }
+	    String name = event.context().toString();
+	    if (_filter.accept(_dir.toFile(), name)) {
+		changed.add(_dir.resolve(name));
+	    }
+	}
+	key.reset();
+    }
+
+}